@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
+import java.util.Random;
 
 
 import java.util.regex.Pattern;
@@ -14,7 +15,15 @@ import static loa.Piece.*;
 import static loa.Square.*;
 
 /**
- * Represents the state of a game of Lines of Action.
+ * Represents the state of a game of Lines of Action.  The pieces are
+ * kept as two bitboards, one 64-bit long per side, in which Square S
+ * is bit S.index().  The number of pieces on each line of action is
+ * kept up to date as pieces are set and removed, so each piece has
+ * only eight possible destinations, looked up in precomputed rays; a
+ * move is blocked iff the precomputed mask of the squares it passes
+ * over meets an opposing piece, and contiguous groups are grown by
+ * shifting bits.  The position also has a Zobrist key, updated with
+ * each piece set or removed and each change of turn.
  *
  * @author kenny liao
  */
@@ -64,14 +73,18 @@ class Board {
      * Set my state to CONTENTS with SIDE to move.
      */
     void initialize(Piece[][] contents, Piece side) {
+        _black = _white = 0;
+        _key = 0;
+        _turn = WP;
+        Arrays.fill(_lineCounts, 0);
         int count = 0;
         for (int i = 0; i < BOARD_SIZE; i++) {
             for (int j = 0; j < BOARD_SIZE; j++) {
-                _board[ALL_SQUARES[count].index()] = contents[i][j];
+                set(ALL_SQUARES[count], contents[i][j]);
                 count += 1;
             }
         }
-        _turn = side;
+        setTurn(side);
         _moveLimit = DEFAULT_MOVE_LIMIT;
     }
 
@@ -87,15 +100,14 @@ class Board {
      */
     void copyFrom(Board board) {
         if (board != this) {
-            int count = 0;
-            Piece[][] contents = new Piece[board.getSize()][board.getSize()];
-            for (int i = 0; i < board.getSize(); i++) {
-                for (int j = 0; j < board.getSize(); j++) {
-                    contents[i][j] = board.get(board.getSq(count));
-                    count += 1;
-                }
-            }
-            initialize(contents, board.turn());
+            _black = board._black;
+            _white = board._white;
+            System.arraycopy(board._lineCounts, 0, _lineCounts, 0,
+                             _lineCounts.length);
+            _turn = board.turn();
+            _key = board._key;
+            _moveLimit = DEFAULT_MOVE_LIMIT;
+            _subsetsInitialized = false;
         }
     }
 
@@ -110,7 +122,35 @@ class Board {
      * Return the contents of the square at SQ.
      */
     Piece get(Square sq) {
-        return _board[sq.index()];
+        long bit = 1L << sq.index();
+        if ((_black & bit) != 0) {
+            return BP;
+        } else if ((_white & bit) != 0) {
+            return WP;
+        }
+        return EMP;
+    }
+
+    /**
+     * Return the bitboard of the pieces of SIDE, which is empty for
+     * EMP.
+     */
+    long pieces(Piece side) {
+        switch (side) {
+        case BP:
+            return _black;
+        case WP:
+            return _white;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Return the bitboard of all occupied squares.
+     */
+    long occupied() {
+        return _black | _white;
     }
 
     /**
@@ -125,12 +165,54 @@ class Board {
      * to NEXT, if NEXT is not null.
      */
     void set(Square sq, Piece v, Piece next) {
-        _board[sq.index()] = v;
+        long bit = 1L << sq.index();
+        boolean was = (occupied() & bit) != 0;
+        if (was != (v != EMP)) {
+            for (int d = 0; d < 4; d += 1) {
+                _lineCounts[LINE_IDS[d][sq.index()]] += was ? -1 : 1;
+            }
+        }
+        _key ^= zobrist(get(sq), sq) ^ zobrist(v, sq);
+        _black &= ~bit;
+        _white &= ~bit;
+        if (v == BP) {
+            _black |= bit;
+        } else if (v == WP) {
+            _white |= bit;
+        }
+        _subsetsInitialized = false;
         if (next != null) {
-            _turn = next;
+            setTurn(next);
+        }
+    }
+
+    /**
+     * Make SIDE the side to move.
+     */
+    private void setTurn(Piece side) {
+        if (side != _turn) {
+            _key ^= BLACK_TO_MOVE;
+            _turn = side;
         }
     }
 
+    /**
+     * Return the Zobrist key of piece P on SQ, which is 0 for EMP.
+     */
+    private static long zobrist(Piece p, Square sq) {
+        return p == EMP ? 0 : ZOBRIST[p.ordinal()][sq.index()];
+    }
+
+    /**
+     * Return the Zobrist key of this position: the XOR of a random
+     * number for each piece on each square, and of another if black
+     * is to move.  Equal positions have equal keys, and it costs
+     * nothing to read, being kept up to date by every change.
+     */
+    long key() {
+        return _key;
+    }
+
     /**
      * Set the square at SQ to V, without modifying the side that
      * moves next.
@@ -158,7 +240,7 @@ class Board {
 
     void makeMove(Move move) {
         assert isLegal(move);
-        Boolean capture = isCapture(move);
+        boolean capture = isCapture(move);
         Square from = move.getFrom();
         Square to = move.getTo();
         if (capture) {
@@ -169,31 +251,25 @@ class Board {
         }
         _moves.add(move);
         actualMove(from, to);
-        if (_turn == BP) {
-            _turn = WP;
-        } else {
-            _turn = BP;
-        }
+        setTurn(_turn.opposite());
     }
 
     /**
      * Actually move piece FROM - TO.
      */
     void actualMove(Square from, Square to) {
-        int temp = from.index();
-        _board[to.index()] = get(from);
-        _board[temp] = EMP;
+        set(to, get(from));
+        set(from, EMP);
     }
 
 
     /**
-     * Returns true if the MOVE is a capture move.
+     * Return true iff MOVE, made from this position, would capture.
      */
-    private Boolean isCapture(Move move) {
-        Square from = move.getFrom();
-        Square to = move.getTo();
-        return !get(from).abbrev().equals(get(to).abbrev())
-                && !get(to).abbrev().equals("-");
+    boolean isCapture(Move move) {
+        Piece mover = get(move.getFrom());
+        return mover != EMP
+            && (pieces(mover.opposite()) & (1L << move.getTo().index())) != 0;
     }
 
     /**
@@ -208,14 +284,10 @@ class Board {
         _prev.remove(_prev.size() - 1);
         actualMove(move.getTo(), move.getFrom());
         if (loc != null) {
-            _board[loc.index()] = _koma.get(_koma.size() - 1);
+            set(loc, _koma.get(_koma.size() - 1));
             _koma.remove(_koma.size() - 1);
         }
-        if (_turn == BP) {
-            _turn = WP;
-        } else {
-            _turn = BP;
-        }
+        setTurn(_turn.opposite());
     }
 
     /**
@@ -230,58 +302,18 @@ class Board {
      * move.
      */
     boolean isLegal(Square from, Square to) {
-        if (!from.isValidMove(to)) {
-            return false;
-        }
-        int dir = from.direction(to);
-        int dist = from.distance(to);
-        int required = countPieces(from, to);
-        String fromName = get(from).abbrev();
-        if (fromName.equals("-")) {
-            return false;
-        }
-        String toName = get(to).abbrev();
-        if (fromName.equals(toName)) {
+        if (!from.isValidMove(to) || get(from) == EMP) {
             return false;
         }
-        while (from != to) {
-            if (!get(from).abbrev().equals(fromName)
-                    && !get(from).abbrev().equals("-")) {
-                return false;
-            }
-            from = from.moveDest(dir, 1);
-        }
-        return required == dist;
+        return from.distance(to) == countPieces(from, to)
+            && !blocked(from, to);
     }
 
     /**
      * Return the total amount of pieces on the LOA of FROM - TO.
      */
     public int countPieces(Square from, Square to) {
-        int dir = from.direction(to);
-        int dirBack = to.direction(from);
-        int count1 = 1;
-        int count2 = 1;
-        int ans = 0;
-        while (from.moveDest(dir, count1) != null) {
-            count1 += 1;
-        }
-        Square end1 = from.moveDest(dir, count1 - 1);
-        while (to.moveDest(dirBack, count2) != null) {
-            count2 += 1;
-        }
-        Square end2 = to.moveDest(dirBack, count2 - 1);
-        dir = end1.direction(end2);
-        while (end1 != end2) {
-            if (!get(end1).abbrev().equals("-")) {
-                ans += 1;
-            }
-            end1 = end1.moveDest(dir, 1);
-        }
-        if (!get(end2).abbrev().equals("-")) {
-            ans += 1;
-        }
-        return ans;
+        return _lineCounts[LINE_IDS[from.direction(to) % 4][from.index()]];
     }
 
     /**
@@ -297,14 +329,30 @@ class Board {
      */
     ArrayList<Move> legalMoves() {
         ArrayList<Move> ans = new ArrayList<>();
-        for (int i = 0; i < _board.length; i++) {
-            if (get(ALL_SQUARES[i]).fullName().equals(_turn.fullName())) {
-                for (int j = 0; j < ALL_SQUARES.length; j++) {
-                    if (isLegal(ALL_SQUARES[i], ALL_SQUARES[j])) {
-                        ans.add(Move.mv(ALL_SQUARES[i], ALL_SQUARES[j]));
+        int[] dests = new int[8];
+        for (long mine = pieces(_turn); mine != 0; mine &= mine - 1) {
+            int i = Long.numberOfTrailingZeros(mine);
+            Square from = ALL_SQUARES[i];
+            int n = 0;
+            for (int dir = 0; dir < 8; dir += 1) {
+                Square[] ray = RAYS[i][dir];
+                int dist = _lineCounts[LINE_IDS[dir % 4][i]];
+                if (dist > ray.length) {
+                    continue;
+                }
+                Square to = ray[dist - 1];
+                if (!blocked(from, to)) {
+                    int k = n;
+                    for (; k > 0 && dests[k - 1] > to.index(); k -= 1) {
+                        dests[k] = dests[k - 1];
                     }
+                    dests[k] = to.index();
+                    n += 1;
                 }
             }
+            for (int k = 0; k < n; k += 1) {
+                ans.add(Move.mv(from, ALL_SQUARES[dests[k]]));
+            }
         }
         return ans;
     }
@@ -373,12 +421,12 @@ class Board {
     @Override
     public boolean equals(Object obj) {
         Board b = (Board) obj;
-        return Arrays.deepEquals(_board, b._board) && _turn == b._turn;
+        return _black == b._black && _white == b._white && _turn == b._turn;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(_board) * 2 + _turn.hashCode();
+        return Long.hashCode(_key);
     }
 
     @Override
@@ -401,38 +449,38 @@ class Board {
      * piece or by a friendly piece on the target square.
      */
     private boolean blocked(Square from, Square to) {
-        return false;
+        Piece side = get(from);
+        return (pieces(side) & (1L << to.index())) != 0
+            || (pieces(side.opposite()) & BETWEEN[from.index()][to.index()])
+               != 0;
     }
 
     /**
-     * Return the size of the as-yet unvisited cluster of squares
-     * containing P at and adjacent to SQ.  VISITED indicates squares that
-     * have already been processed or are in different clusters.  Update
-     * VISITED to reflect squares counted. Counts ORIG if sq is origin.
+     * Return PIECES grown by one square in every direction.
      */
-    private int numContig(Square sq, boolean[][] visited,
-                          Piece p, boolean orig) {
-        if (orig && get(sq) == EMP) {
-            return 0;
-        }
-        int count = 0;
-        if (orig && get(sq) == p && !visited[sq.row()][sq.col()]) {
-            visited[sq.row()][sq.col()] = true;
-            count++;
-        }
-        for (int i = 0; i < 8; i++) {
-            Square target = sq.moveDest(i, 1);
-            if (target != null) {
-                int first = Math.floorDiv(target.index(), BOARD_SIZE);
-                int sec = target.index() % BOARD_SIZE;
-                if (!visited[first][sec] && get(target) == p && get(sq) == p) {
-                    visited[first][sec] = true;
-                    count = count + 1 + numContig(target, visited, p, false);
-                    connected.add(target);
-                }
+    private static long spread(long pieces) {
+        long row = pieces | ((pieces << 1) & ~COLUMN_A)
+            | ((pieces >>> 1) & ~COLUMN_H);
+        return row | (row << BOARD_SIZE) | (row >>> BOARD_SIZE);
+    }
+
+    /**
+     * Add to SIZES the sizes of the contiguous groups in PIECES, largest
+     * first.  Each group is grown from its lowest square until it
+     * stops changing.
+     */
+    private static void regions(long pieces, ArrayList<Integer> sizes) {
+        sizes.clear();
+        for (long rest = pieces; rest != 0;) {
+            long group = rest & -rest;
+            for (long grown = spread(group) & pieces; grown != group;
+                 grown = spread(group) & pieces) {
+                group = grown;
             }
+            sizes.add(Long.bitCount(group));
+            rest &= ~group;
         }
-        return count;
+        Collections.sort(sizes, Collections.reverseOrder());
     }
 
     /**
@@ -442,58 +490,14 @@ class Board {
         if (_subsetsInitialized) {
             return;
         }
-        _whiteRegionSizes.clear();
-        _blackRegionSizes.clear();
-        boolean[][] whiteVis = new boolean[BOARD_SIZE][BOARD_SIZE];
-        boolean[][] blackVis = new boolean[BOARD_SIZE][BOARD_SIZE];
-        int whitePiece = 0;
-        int blackPiece = 0;
-        for (Piece piece : _board) {
-            if (piece == WP) {
-                whitePiece += 1;
-            }
-            if (piece == BP) {
-                blackPiece += 1;
-            }
-        }
-        int countW = 0;
-        int countB = 0;
-        while (sum(_whiteRegionSizes) != whitePiece) {
-            _whiteRegionSizes.add(numContig(ALL_SQUARES[countW],
-                    whiteVis, WP, true));
-            countW += 1;
-            update(whiteVis);
-        }
-        while (sum(_blackRegionSizes) != blackPiece) {
-            _blackRegionSizes.add(numContig(ALL_SQUARES[countB],
-                    blackVis, BP, true));
-            countB += 1;
-            update(blackVis);
-        }
-        _whiteRegionSizes.removeAll(Collections.singleton(0));
-        _blackRegionSizes.removeAll(Collections.singleton(0));
-        Collections.sort(_whiteRegionSizes, Collections.reverseOrder());
-        Collections.sort(_blackRegionSizes, Collections.reverseOrder());
+        regions(_white, _whiteRegionSizes);
+        regions(_black, _blackRegionSizes);
         if (_blackRegionSizes.size() == 1 || _whiteRegionSizes.size() == 1) {
             _winnerKnown = true;
         }
         _subsetsInitialized = true;
     }
 
-    /**
-     * Update VISITED for piece p starting from square.
-     */
-    private void update(boolean[][] visited) {
-        for (Square target : connected) {
-            if (target != null) {
-                int first = Math.floorDiv(target.index(), BOARD_SIZE);
-                int sec = target.index() % BOARD_SIZE;
-                visited[first][sec] = true;
-            }
-        }
-        connected.clear();
-    }
-
     /**
      * Returns the Sum of element in array A.
      */
@@ -547,6 +551,83 @@ class Board {
         return get(ALL_SQUARES[i]);
     }
 
+    /**
+     * The squares of column a, and of column h.
+     */
+    private static final long COLUMN_A = 0x0101010101010101L,
+        COLUMN_H = COLUMN_A << (BOARD_SIZE - 1);
+
+    /**
+     * LINES[D][S] is the mask of the squares on the line of action
+     * through Square S in direction D and its opposite, D + 4, S
+     * included.
+     */
+    private static final long[][] LINES = new long[4][NUM_SQUARES];
+
+    /**
+     * BETWEEN[S][T] is the mask of the squares strictly between
+     * Squares S and T, if they are on one line of action.
+     */
+    private static final long[][] BETWEEN =
+        new long[NUM_SQUARES][NUM_SQUARES];
+
+    /**
+     * RAYS[S][D] lists the squares from Square S in direction D,
+     * nearest first.
+     */
+    private static final Square[][][] RAYS = new Square[NUM_SQUARES][8][];
+
+    /**
+     * LINE_IDS[D][S] numbers LINES[D][S], the line through Square S in
+     * direction D, by the direction and the lowest square on the line.
+     */
+    private static final int[][] LINE_IDS = new int[4][NUM_SQUARES];
+
+    /**
+     * ZOBRIST[P.ordinal()][S] is the random number for piece P on
+     * Square S.
+     */
+    private static final long[][] ZOBRIST = new long[2][NUM_SQUARES];
+
+    /**
+     * The random number for black to move.
+     */
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random random = new Random(0x10AL);
+        for (long[] keys : ZOBRIST) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                keys[i] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    static {
+        for (Square sq : ALL_SQUARES) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                long passed = 0;
+                ArrayList<Square> ray = new ArrayList<>();
+                LINES[dir % 4][sq.index()] |= 1L << sq.index();
+                for (int k = 1; sq.moveDest(dir, k) != null; k += 1) {
+                    Square to = sq.moveDest(dir, k);
+                    LINES[dir % 4][sq.index()] |= 1L << to.index();
+                    BETWEEN[sq.index()][to.index()] = passed;
+                    passed |= 1L << to.index();
+                    ray.add(to);
+                }
+                RAYS[sq.index()][dir] = ray.toArray(new Square[0]);
+            }
+        }
+        for (int d = 0; d < 4; d += 1) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                LINE_IDS[d][i] = d * NUM_SQUARES
+                    + Long.numberOfTrailingZeros(LINES[d][i]);
+            }
+        }
+    }
+
 
     /** Return the estimated of board. */
     public int getValue() {
@@ -569,14 +650,25 @@ class Board {
     };
 
     /**
-     * Caches square with pieces connected with each other.
+     * Squares holding black pieces: bit S.index() for Square S.
+     */
+    private long _black;
+
+    /**
+     * Squares holding white pieces.
+     */
+    private long _white;
+
+    /**
+     * The number of pieces on each line of action, by line id (see
+     * LINE_IDS).
      */
-    private ArrayList<Square> connected = new ArrayList<>();
+    private final int[] _lineCounts = new int[4 * NUM_SQUARES];
 
     /**
-     * Current contents of the board.  Square S is at _board[S.index()].
+     * Zobrist key of the position.
      */
-    private final Piece[] _board = new Piece[BOARD_SIZE * BOARD_SIZE];
+    private long _key;
 
     /**
      * List of all captured piece.
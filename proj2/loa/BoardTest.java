@@ -2,6 +2,11 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
 import org.junit.Test;
 
 
@@ -9,6 +14,7 @@ import static org.junit.Assert.*;
 
 import static loa.Piece.*;
 import static loa.Square.sq;
+import static loa.Square.BOARD_SIZE;
 import static loa.Move.mv;
 
 /** Tests of the Board class API.
@@ -75,6 +81,32 @@ public class BoardTest {
             { WP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
     };
 
+    /** A position in which the black piece on d3 is hemmed in by
+     *  white ones, and lines are blocked by both colors. */
+    static final Piece[][] BLOCKED = {
+        {  BP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP,  WP,  WP,  WP, EMP, EMP, EMP },
+        { EMP, EMP,  WP,  BP,  WP, EMP,  BP, EMP },
+        { EMP, EMP,  WP,  WP,  WP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP,  WP, EMP },
+        { EMP,  BP, EMP, EMP, EMP, EMP,  BP, EMP },
+        { EMP, EMP, EMP, EMP,  BP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, EMP,  BP },
+    };
+
+    /** A position with pieces in the corners and along the edges,
+     *  where most lines would run off the board. */
+    static final Piece[][] EDGES = {
+        {  BP,  WP,  WP,  BP,  BP,  WP,  WP,  BP },
+        {  WP, EMP, EMP, EMP, EMP, EMP, EMP,  WP },
+        {  BP, EMP, EMP, EMP, EMP, EMP, EMP,  BP },
+        {  BP, EMP, EMP, EMP, EMP, EMP, EMP,  WP },
+        {  WP, EMP, EMP, EMP, EMP, EMP, EMP,  BP },
+        {  BP, EMP, EMP, EMP, EMP, EMP, EMP,  BP },
+        {  WP, EMP, EMP, EMP, EMP, EMP, EMP,  WP },
+        {  BP,  WP,  BP,  BP,  WP,  WP,  BP,  BP },
+    };
+
     static final String BOARD1_STRING =
         "===\n"
         + "    - b b b - b b - \n"
@@ -159,4 +191,184 @@ public class BoardTest {
                      0, b1.movesMade());
     }
 
+    /** Return a board built afresh from the contents and turn of B. */
+    static Board rebuilt(Board b) {
+        Piece[][] contents = new Piece[BOARD_SIZE][BOARD_SIZE];
+        for (int r = 0; r < BOARD_SIZE; r += 1) {
+            for (int c = 0; c < BOARD_SIZE; c += 1) {
+                contents[r][c] = b.get(sq(c, r));
+            }
+        }
+        return new Board(contents, b.turn());
+    }
+
+    @Test
+    public void testKey() {
+        Board b1 = new Board(BOARD1, BP);
+        long key = b1.key();
+        assertEquals("key of a fresh board", key, rebuilt(b1).key());
+        assertNotEquals("key depends on turn", key,
+                        new Board(BOARD1, WP).key());
+        b1.makeMove(mv("f3-d5"));
+        assertNotEquals("key changes with a move", key, b1.key());
+        assertEquals("key after capture f3-d5", rebuilt(b1).key(), b1.key());
+        b1.makeMove(b1.legalMoves().get(0));
+        assertEquals("key after a reply", rebuilt(b1).key(), b1.key());
+        b1.retract();
+        b1.retract();
+        assertEquals("key after move + retraction", key, b1.key());
+    }
+
+    /** Return true iff FROM-TO is legal for the side to move on B,
+     *  judged square by square from the contents of B alone. */
+    static boolean naiveLegal(Board b, Square from, Square to) {
+        if (!from.isValidMove(to) || b.get(from) != b.turn()
+            || b.get(to) == b.turn()) {
+            return false;
+        }
+        int dir = from.direction(to);
+        int count = 1;
+        for (int d : new int[] { dir, (dir + 4) % 8 }) {
+            for (int k = 1; from.moveDest(d, k) != null; k += 1) {
+                if (b.get(from.moveDest(d, k)) != EMP) {
+                    count += 1;
+                }
+            }
+        }
+        for (int k = 1; k < from.distance(to); k += 1) {
+            Piece p = b.get(from.moveDest(dir, k));
+            if (p != EMP && p != b.turn()) {
+                return false;
+            }
+        }
+        return count == from.distance(to);
+    }
+
+    /** Return the legal moves on B found by trying every pair of
+     *  squares, in the order of Board.legalMoves(). */
+    static String naiveMoves(Board b) {
+        ArrayList<Move> moves = new ArrayList<>();
+        for (Square from : Square.ALL_SQUARES) {
+            for (Square to : Square.ALL_SQUARES) {
+                if (naiveLegal(b, from, to)) {
+                    moves.add(mv(from, to));
+                }
+            }
+        }
+        return moves.toString();
+    }
+
+    /** Return the number of SIDE's pieces on B, counted square by
+     *  square. */
+    static int naiveCount(Board b, Piece side) {
+        int n = 0;
+        for (Square sq : Square.ALL_SQUARES) {
+            if (b.get(sq) == side) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff SIDE's pieces on B are contiguous, found by a
+     *  flood fill from one of them. */
+    static boolean naiveContiguous(Board b, Piece side) {
+        ArrayDeque<Square> work = new ArrayDeque<>();
+        HashSet<Square> seen = new HashSet<>();
+        for (Square sq : Square.ALL_SQUARES) {
+            if (b.get(sq) == side) {
+                work.add(sq);
+                seen.add(sq);
+                break;
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Square adj : work.remove().adjacent()) {
+                if (b.get(adj) == side && seen.add(adj)) {
+                    work.add(adj);
+                }
+            }
+        }
+        return seen.size() == naiveCount(b, side);
+    }
+
+    /** Return the winner on B as Board.winner() defines it, computed
+     *  from the contents of B alone. */
+    static Piece naiveWinner(Board b) {
+        boolean white = naiveContiguous(b, WP),
+            black = naiveContiguous(b, BP);
+        if (white && black) {
+            return b.turn() == BP ? WP : BP;
+        } else if (white) {
+            return WP;
+        } else if (black) {
+            return BP;
+        } else if (b.movesMade() >= b.getLimit()) {
+            return EMP;
+        } else {
+            return null;
+        }
+    }
+
+    /** Check the moves, piece counts and winner of B against those
+     *  computed square by square, reporting failures with MSG. */
+    static void checkAgainstNaive(String msg, Board b) {
+        assertEquals(msg + " moves", naiveMoves(b),
+                     b.legalMoves().toString());
+        for (Piece side : new Piece[] { BP, WP }) {
+            assertEquals(msg + " " + side + " count", naiveCount(b, side),
+                         Long.bitCount(b.pieces(side)));
+        }
+        assertEquals(msg + " winner", naiveWinner(b), b.winner());
+    }
+
+    @Test
+    public void testBlockedLines() {
+        Board b = new Board(BLOCKED, BP);
+        checkAgainstNaive("blocked", b);
+        for (Move m : b.legalMoves()) {
+            assertFalse("hemmed-in d3 moves", m.getFrom() == sq("d3"));
+        }
+        assertFalse("g3-g6 over white g5", b.isLegal(mv("g3-g6")));
+        assertTrue("h8-d4 captures", b.isLegal(mv("h8-d4")));
+        checkAgainstNaive("blocked, white", new Board(BLOCKED, WP));
+    }
+
+    @Test
+    public void testEdges() {
+        checkAgainstNaive("edges", new Board(EDGES, BP));
+        checkAgainstNaive("edges, white", new Board(EDGES, WP));
+        checkAgainstNaive("initial", new Board());
+    }
+
+    @Test
+    public void testCaptures() {
+        Board b = new Board(BOARD1, BP);
+        checkAgainstNaive("board 1", b);
+        assertTrue("f3-d5 captures", b.isCapture(mv("f3-d5")));
+        b.makeMove(mv("f3-d5"));
+        assertEquals("white after capture", 11,
+                     Long.bitCount(b.pieces(WP)));
+        checkAgainstNaive("board 1 after capture", b);
+        b.retract();
+        checkAgainstNaive("board 1 after retraction", b);
+    }
+
+    @Test
+    public void testRandomGames() {
+        Random r = new Random(21);
+        for (int game = 0; game < 20; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null) {
+                checkAgainstNaive("game " + game, b);
+                ArrayList<Move> moves = b.legalMoves();
+                b.makeMove(moves.get(r.nextInt(moves.size())));
+                if (r.nextInt(4) == 0) {
+                    b.retract();
+                }
+            }
+            checkAgainstNaive("end of game " + game, b);
+        }
+    }
+
 }
@@ -3,8 +3,10 @@
 package loa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static loa.Piece.*;
+import static loa.Utils.*;
 
 /**
  * An automated Player.
@@ -23,6 +25,59 @@ class MachinePlayer extends Player {
      */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /**
+     * The transposition table has 2**TABLE_BITS entries.
+     */
+    private static final int TABLE_BITS = 20;
+
+    /**
+     * Milliseconds allowed for choosing a move.
+     */
+    private static final long MOVE_TIME = 1000;
+
+    /**
+     * Deepest search ever tried.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Scores of at least this magnitude are won or lost games: a win
+     * PLY moves below the root scores WINNING_VALUE - PLY, and PLY is
+     * at most MAX_DEPTH.
+     */
+    private static final int MATE_VALUE = WINNING_VALUE - MAX_DEPTH;
+
+    /**
+     * The clock is read once per this many positions searched.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * Order score of the move the transposition table found best.
+     */
+    private static final int HASH_ORDER = 1 << 30;
+
+    /**
+     * Order score of a capture, before its history score is added.
+     */
+    private static final int CAPTURE_ORDER = 1 << 29;
+
+    /**
+     * Order score of the first killer move; the second's is one less.
+     */
+    private static final int KILLER_ORDER = 1 << 28;
+
+    /**
+     * History scores are halved when one exceeds this, keeping them
+     * below KILLER_ORDER.
+     */
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    /**
+     * Killer moves of a ply beyond MAX_DEPTH: none.
+     */
+    private static final Move[] NO_KILLERS = new Move[2];
+
     /**
      * A new MachinePlayer with no piece or controller (intended to produce
      * a template).
@@ -60,76 +115,283 @@ class MachinePlayer extends Player {
     }
 
     /**
-     * Return a move after searching the game tree to DEPTH>0 moves
-     * from the current position. Assumes the game is not over.
+     * Return a move after searching the game tree from the current
+     * position to depths 1, 2, ... in turn, for MOVE_TIME
+     * milliseconds, and return the best move of the deepest search
+     * that finished.  Each search starts with the moves the last one
+     * found best, which _table remembers, and orders the rest by the
+     * killer moves and history scores the earlier searches gathered.
+     * Searching stops early once a win or loss is certain.  Assumes
+     * the game is not over.
      */
     private Move searchForMove() {
         Board work = new Board(getBoard());
         work.setMoveLimit(getBoard().getLimit() - getBoard().movesMade());
-        int value;
         assert side() == work.turn();
-        _foundMove = null;
-        if (side() == WP) {
-            _me = WP;
-            value = findMove(work, chooseDepth(), true, 1, -INFTY, INFTY);
-        } else {
-            _me = BP;
-            value = findMove(work, chooseDepth(), true, -1, -INFTY, INFTY);
+        if (_table == null) {
+            _table = new TranspositionTable(TABLE_BITS);
+        }
+        _me = side();
+        _deadline = System.currentTimeMillis() + MOVE_TIME;
+        _timeUp = false;
+        _mayStop = false;
+        for (Move[] killers : _killers) {
+            Arrays.fill(killers, null);
+        }
+        ageHistory();
+        Move best = null;
+        for (int depth = 1; depth <= chooseDepth(); depth += 1) {
+            _foundMove = null;
+            int value = findMove(work, depth, 0, true, -INFTY, INFTY);
+            if (_timeUp) {
+                break;
+            }
+            if (_foundMove != null) {
+                best = _foundMove;
+            }
+            _mayStop = true;
+            debug(1, "Depth %d: %s, value %d", depth, best, value);
+            if (Math.abs(value) >= MATE_VALUE) {
+                break;
+            }
+        }
+        if (best == null) {
+            best = work.legalMoves().get(0);
         }
-        return _foundMove;
+        return best;
     }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _foundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _foundMove. If the game is over
-     * on BOARD, does not set _foundMove.
+     * Return true, and from then on until the next move is chosen, iff
+     * the time for choosing it is up.  The clock is read every
+     * CHECK_INTERVAL calls, once a search has finished, so that there
+     * is always a move to return.
      */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (board.gameOver()) {
-            return INFTY;
+    private boolean timeUp() {
+        if (!_timeUp && _mayStop && ++_nodes % CHECK_INTERVAL == 0
+            && System.currentTimeMillis() > _deadline) {
+            _timeUp = true;
+        }
+        return _timeUp;
+    }
+
+    /**
+     * Find a move from position BOARD, PLY moves below the position
+     * searched from, and return its value to the side to move: positive
+     * when it favors that side.  Records the move found in _foundMove
+     * iff SAVEMOVE.  The move should have maximal value, or any value
+     * >= BETA, which cuts the search short; a value <= ALPHA is only
+     * known to be at most ALPHA.  Searches up to DEPTH levels.
+     * Searching at level 0 simply returns a static estimate of the
+     * board value and does not set _foundMove.  If the game is over on
+     * BOARD, does not set _foundMove.  A game won PLY moves below the
+     * root is worth WINNING_VALUE - PLY, so that quicker wins and
+     * slower losses are preferred.  Positions already searched at
+     * least as deep, reached by another order of moves, are looked up
+     * in _table, unless the search could reach the move limit, whose
+     * draw makes the value depend on the moves played.  Once time is
+     * up, returns at once a value that is to be ignored.
+     */
+    private int findMove(Board board, int depth, int ply, boolean saveMove,
+                         int alpha, int beta) {
+        if (timeUp()) {
+            return 0;
+        }
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winner == board.turn() ? WINNING_VALUE - ply
+                : winner == board.turn().opposite() ? ply - WINNING_VALUE
+                : 0;
         } else if (depth == 0) {
-            return heuristic(board, side());
-        } else if (saveMove) {
-            if (sense == 1) {
-                _foundMove = findMax(board, depth, alpha, beta, true);
-            } else if (sense == -1) {
-                _foundMove = findMin(board, depth, alpha, beta, true);
+            return estimate(board);
+        }
+        long key = board.key();
+        long entry = _table.probe(key);
+        boolean cacheable = board.movesMade() + depth < board.getLimit();
+        if (entry != 0 && !saveMove && cacheable
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = fromTable(TranspositionTable.score(entry), ply);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                alpha = Math.max(alpha, score);
+                break;
+            default:
+                beta = Math.min(beta, score);
+                break;
+            }
+            if (alpha >= beta) {
+                return score;
             }
-            board.makeMove(_foundMove);
-            int ans = heuristic(board, side());
+        }
+        ArrayList<Move> legal = board.legalMoves();
+        if (legal.isEmpty()) {
+            return estimate(board);
+        }
+        Move[] moves = legal.toArray(new Move[0]);
+        int[] order = orderScores(board, moves, ply,
+                                  TranspositionTable.move(entry));
+        int alpha0 = alpha;
+        int best = -INFTY;
+        Move bestMove = null;
+        for (int k = 0; k < moves.length; k += 1) {
+            Move m = next(moves, order, k);
+            boolean capture = board.isCapture(m);
+            board.makeMove(m);
+            int value = -findMove(board, depth - 1, ply + 1, false,
+                                  -beta, -alpha);
             board.retract();
-            return ans;
+            if (_timeUp) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = m;
+            }
+            alpha = Math.max(alpha, value);
+            if (alpha >= beta) {
+                if (!capture) {
+                    rememberCutoff(m, depth, ply);
+                }
+                break;
+            }
         }
-        return 0;
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        if (cacheable) {
+            _table.store(key, depth, bound, toTable(best, ply), bestMove);
+        }
+        if (saveMove) {
+            _foundMove = bestMove;
+        }
+        return best;
     }
 
     /**
-     * Return a search depth for the current position.
+     * Return SCORE, found PLY moves below the root, as _table records
+     * it: a win or loss counted in moves from the position scored
+     * rather than from the root.
      */
-    private int chooseDepth() {
-        return 3;
+    private static int toTable(int score, int ply) {
+        return score >= MATE_VALUE ? score + ply
+            : score <= -MATE_VALUE ? score - ply : score;
     }
 
+    /**
+     * Return SCORE, recorded in _table, as found PLY moves below the
+     * root.  The inverse of toTable.
+     */
+    private static int fromTable(int score, int ply) {
+        return score >= MATE_VALUE ? score - ply
+            : score <= -MATE_VALUE ? score + ply : score;
+    }
 
     /**
-     * Return estimated values to the each BOARD considering P.
+     * Return the order in which to try MOVES from BOARD, PLY moves below
+     * the root, as a score for each move, highest first.  HASHMOVE, the
+     * best move _table has for BOARD, or null, comes first; then
+     * captures, which change the position most; then the killer moves
+     * at PLY; then the rest, by how often they have cut off searches.
      */
-    private int heuristic(Board board, Piece p) {
-        ArrayList<Integer> mGroup = board.getRegionSizes(p);
-        ArrayList<Integer> oGroup = board.getRegionSizes(board.getOpp(p));
-        if (board.gameOver() && board.winner() == p) {
-            return INFTY;
-        } else if (board.winner() == board.getOpp(p)) {
-            return -INFTY;
-        } else {
-            return (10 - mGroup.size());
+    private int[] orderScores(Board board, Move[] moves, int ply,
+                              Move hashMove) {
+        int[] order = new int[moves.length];
+        Move[] killers = ply < _killers.length ? _killers[ply] : NO_KILLERS;
+        for (int i = 0; i < moves.length; i += 1) {
+            Move m = moves[i];
+            if (m == hashMove) {
+                order[i] = HASH_ORDER;
+            } else if (board.isCapture(m)) {
+                order[i] = CAPTURE_ORDER + _history[historyIndex(m)];
+            } else if (m == killers[0]) {
+                order[i] = KILLER_ORDER;
+            } else if (m == killers[1]) {
+                order[i] = KILLER_ORDER - 1;
+            } else {
+                order[i] = _history[historyIndex(m)];
+            }
         }
+        return order;
     }
+
+    /**
+     * Return the move to try K-th among MOVES, of which the first K
+     * have been tried, swapping it and its score in ORDER into place
+     * K.  Moves are sorted only as far as they are tried.
+     */
+    private static Move next(Move[] moves, int[] order, int k) {
+        int top = k;
+        for (int i = k + 1; i < moves.length; i += 1) {
+            if (order[i] > order[top]) {
+                top = i;
+            }
+        }
+        Move m = moves[top];
+        moves[top] = moves[k];
+        moves[k] = m;
+        int score = order[top];
+        order[top] = order[k];
+        order[k] = score;
+        return m;
+    }
+
+    /**
+     * Record that M, not a capture, cut off a search of DEPTH levels,
+     * PLY moves below the root: it becomes the first killer move at
+     * PLY, and its history score grows by DEPTH squared, so that
+     * cutoffs of deep searches count most.
+     */
+    private void rememberCutoff(Move m, int depth, int ply) {
+        if (ply < _killers.length && _killers[ply][0] != m) {
+            _killers[ply][1] = _killers[ply][0];
+            _killers[ply][0] = m;
+        }
+        int i = historyIndex(m);
+        _history[i] += depth * depth;
+        if (_history[i] > HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    /**
+     * Halve every history score, so that old cutoffs count less.
+     */
+    private void ageHistory() {
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+    }
+
+    /**
+     * Return the index of M in _history.
+     */
+    private static int historyIndex(Move m) {
+        return m.getFrom().index() * Square.NUM_SQUARES + m.getTo().index();
+    }
+
+    /**
+     * Return a static estimate of BOARD, which is not over: positive
+     * when it favors the side to move, which has fewer groups of
+     * pieces to join than the other.  The groups are those winner()
+     * just found, so no region is computed again.
+     */
+    private int estimate(Board board) {
+        int value = board.getRegionSizes(BP).size()
+            - board.getRegionSizes(WP).size();
+        return board.turn() == WP ? value : -value;
+    }
+
+    /**
+     * Return the deepest search worth trying from the current position:
+     * no deeper than the moves left before the game is drawn.
+     */
+    private int chooseDepth() {
+        return Math.max(1, Math.min(MAX_DEPTH,
+            getBoard().getLimit() - getBoard().movesMade()));
+    }
+
     /** Return how many pieces P are in diagonal of
      * each other based on quads of BOARD. */
     private int quad(Board board, Piece p) {
@@ -195,197 +457,33 @@ class MachinePlayer extends Player {
     }
 
     /**
-     * Static evaluation using ME.
-     * Find a single layer of move in BOARD
-     * where ALPHA < BETA and returns best move.
-     */
-    private Move simpleFindMax(Board board, double alpha,
-                               double beta, boolean me) {
-        ArrayList<Move> legal = board.legalMoves();
-        if (board.winner() != null) {
-            return null;
-        }
-        Move best = legal.get(0);
-        for (Move m : legal) {
-            Board temp = new Board(board);
-            temp.makeMove(best);
-            int compare = heuristic(temp, WP);
-
-            board.makeMove(m);
-            board.setValue(heuristic(board, WP));
-
-            if (board.getValue() >= compare) {
-                best = m;
-                alpha = Double.max(alpha, (double) board.getValue());
-                if (!me) {
-                    alpha += 0;
-                }
-                board.retract();
-                if (alpha >= beta) {
-                    break;
-                }
-            } else {
-                board.retract();
-            }
-        }
-        return best;
-    }
-
-    /**
-     * Static evaluation using ME.
-     * Find a single layer of move in BOARD
-     * where ALPHA > BETA and returns best move.
-     */
-    private Move simpleFindMin(Board board, double alpha,
-                               double beta, boolean me) {
-        ArrayList<Move> legal = board.legalMoves();
-        if (board.winner() != null) {
-            return null;
-        }
-
-        Move best = legal.get(0);
-        for (Move m : legal) {
-            Board temp = new Board(board);
-            temp.makeMove(best);
-            int compare = heuristic(temp, BP);
-
-            board.makeMove(m);
-            board.setValue(heuristic(board, BP));
-
-            if (board.getValue() <= compare) {
-                best = m;
-                beta = Double.min(beta, (double) board.getValue());
-                if (!me) {
-                    beta -= 0;
-                }
-                board.retract();
-                if (alpha >= beta) {
-                    break;
-                }
-            } else {
-                board.retract();
-            }
-        }
-        return best;
-    }
-
-    /**
-     * Return the next move in BOARD considering DEPTH and
-     * ALPHA BETA to prune from maximizing player's perspective.
-     * White. using ME.
-     */
-    private Move findMax(Board board, int depth, double alpha,
-                         double beta, boolean me) {
-        if (depth == 0 || board.gameOver()) {
-            return simpleFindMax(board, alpha, beta, me);
-        }
-        ArrayList<Move> legal = board.legalMoves();
-
-        Move best = legal.get(0);
-
-        for (Move m : legal) {
-
-            Board temp = new Board(board);
-            temp.makeMove(best);
-            int compare = heuristic(temp, WP);
-
-            board.makeMove(m);
-
-            Move response = findMin(board, depth - 1, alpha, beta, !me);
-
-            int responseVal = heuristic(board, WP);
-            if (response != null) {
-                board.makeMove(response);
-                responseVal = heuristic(board, WP);
-                board.retract();
-            }
-
-            if (responseVal >= compare) {
-                if (response == null) {
-                    if (board.winner() == WP) {
-                        board.retract();
-                        return m;
-                    }
-                }
-                best = m;
-                alpha = Double.max(alpha, (double) responseVal);
-                if (!me) {
-                    alpha += 0;
-                }
-                if (alpha >= beta) {
-                    board.retract();
-                    break;
-                } else {
-                    board.retract();
-                }
-            } else {
-                board.retract();
-            }
-        }
-        return best;
-    }
-
-    /**
-     * Return the next move in BOARD considering DEPTH and
-     * ALPHA BETA to prune from minimizing player's perspective.
-     * Black. Using ME.
+     * Used to convey moves discovered by findMove.
      */
-    private Move findMin(Board board, int depth, double alpha,
-                         double beta, boolean me) {
-        if (depth == 0 || board.gameOver()) {
-            return simpleFindMin(board, alpha, beta, me);
-        }
-        ArrayList<Move> legal = board.legalMoves();
+    private Move _foundMove;
 
-        Move best = legal.get(0);
+    /** Store my side. */
+    private Piece _me;
 
-        for (Move m : legal) {
+    /** Results of searching positions, kept from move to move. */
+    private TranspositionTable _table;
 
-            Board temp = new Board(board);
-            temp.makeMove(best);
-            int compare = heuristic(temp, BP);
+    /** When the current search must stop, in milliseconds. */
+    private long _deadline;
 
-            board.makeMove(m);
+    /** True iff the current search ran out of time. */
+    private boolean _timeUp;
 
-            Move response = findMax(board, depth - 1, alpha, beta, !me);
+    /** True once a search has finished for the current move. */
+    private boolean _mayStop;
 
-            int responseVal = heuristic(board, BP);
-            if (response != null) {
-                board.makeMove(response);
-                responseVal = heuristic(board, BP);
-                board.retract();
-            }
+    /** Calls of findMove, for deciding when to read the clock. */
+    private long _nodes;
 
-            if (responseVal <= compare) {
-                if (response == null) {
-                    if (board.winner() == BP) {
-                        board.retract();
-                        return m;
-                    }
-                }
-                best = m;
-                beta = Double.min(beta, (double) responseVal);
-                if (!me) {
-                    beta -= 0;
-                }
-                if (alpha >= beta) {
-                    board.retract();
-                    break;
-                } else {
-                    board.retract();
-                }
-            } else {
-                board.retract();
-            }
-        }
-        return best;
-    }
-
-    /**
-     * Used to convey moves discovered by findMove.
-     */
-    private Move _foundMove;
+    /** The two quiet moves that last cut off a search at each ply. */
+    private final Move[][] _killers = new Move[MAX_DEPTH + 1][2];
 
-    /** Store my side. */
-    private Piece _me;
+    /** How much each quiet move, by historyIndex, has cut off
+     *  searches, kept from move to move. */
+    private final int[] _history =
+        new int[Square.NUM_SQUARES * Square.NUM_SQUARES];
 }
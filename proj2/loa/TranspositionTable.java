@@ -0,0 +1,107 @@
+package loa;
+
+import static loa.Square.*;
+
+/**
+ * A fixed-size table of the results of searching positions, indexed by
+ * their Zobrist keys (see Board.key()).  Each entry records the depth
+ * searched, whether the score is exact or only a bound, the score and
+ * the best move found, packed into one long.  An entry is stored as
+ * two longs, the packed data and the data XORed with the key, so that
+ * an entry torn by a concurrent write fails the key check instead of
+ * being misread; no locks are needed.
+ *
+ * @author kenny liao
+ */
+class TranspositionTable {
+
+    /** Bound type of a score that is exact. */
+    static final int EXACT = 0;
+
+    /** Bound type of a score that is at least the true value. */
+    static final int LOWER = 1;
+
+    /** Bound type of a score that is at most the true value. */
+    static final int UPPER = 2;
+
+    /** Bit position of the move in a packed entry. */
+    private static final int MOVE_SHIFT = 32;
+
+    /** Bit position of the depth in a packed entry. */
+    private static final int DEPTH_SHIFT = 45;
+
+    /** Bit position of the bound type in a packed entry. */
+    private static final int BOUND_SHIFT = 53;
+
+    /** Bit set in every packed entry, so that none is 0. */
+    private static final long PRESENT = 1L << 55;
+
+    /** A table of 2**BITS entries. */
+    TranspositionTable(int bits) {
+        _keys = new long[1 << bits];
+        _data = new long[1 << bits];
+        _mask = (1 << bits) - 1;
+    }
+
+    /** Return the packed entry for the position with key KEY, or 0 if
+     *  there is none. */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long data = _data[i];
+        return (_keys[i] ^ data) == key ? data : 0;
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has
+     *  SCORE, of bound type BOUND, and best move BEST, which may be
+     *  null.  An entry for another position is always replaced; one
+     *  for the same position only by a search at least as deep. */
+    void store(long key, int depth, int bound, int score, Move best) {
+        int i = (int) key & _mask;
+        long old = probe(key);
+        if (old != 0 && depth(old) > depth) {
+            return;
+        }
+        long move = best == null ? 0
+            : 1 + best.getFrom().index() * NUM_SQUARES + best.getTo().index();
+        long data = PRESENT | (long) bound << BOUND_SHIFT
+            | (long) depth << DEPTH_SHIFT | move << MOVE_SHIFT
+            | (score & 0xffffffffL);
+        _data[i] = data;
+        _keys[i] = key ^ data;
+    }
+
+    /** Return the depth of the packed entry DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xff;
+    }
+
+    /** Return the bound type of the packed entry DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /** Return the score of the packed entry DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the best move of the packed entry DATA, or null. */
+    static Move move(long data) {
+        int move = (int) (data >>> MOVE_SHIFT) & 0x1fff;
+        if (move == 0) {
+            return null;
+        }
+        move -= 1;
+        return Move.mv(ALL_SQUARES[move / NUM_SQUARES],
+                       ALL_SQUARES[move % NUM_SQUARES]);
+    }
+
+    /** Keys of the entries, each XORed with its data. */
+    private final long[] _keys;
+
+    /** The packed entries. */
+    private final long[] _data;
+
+    /** Mask selecting an entry's index from a key. */
+    private final int _mask;
+}
@@ -0,0 +1,69 @@
+package loa;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static loa.Move.mv;
+import static loa.TranspositionTable.*;
+
+/** Tests of TranspositionTable.
+ *  @author kenny liao
+ */
+public class TranspositionTableTest {
+
+    /** Keys that fall in the same entry of a table of 2**4 entries. */
+    static final long KEY1 = 0x123456789abcdef1L, KEY2 = 0x7edcba9876543211L;
+
+    @Test
+    public void testRoundTrip() {
+        TranspositionTable table = new TranspositionTable(4);
+        assertEquals("empty table", 0, table.probe(KEY1));
+
+        table.store(KEY1, 7, LOWER, -1234567, mv("h8-a1"));
+        long data = table.probe(KEY1);
+        assertNotEquals("entry present", 0, data);
+        assertEquals("depth", 7, depth(data));
+        assertEquals("bound", LOWER, bound(data));
+        assertEquals("negative score", -1234567, score(data));
+        assertEquals("move", mv("h8-a1"), move(data));
+
+        table.store(KEY1, 255, UPPER, Integer.MIN_VALUE + 1, null);
+        data = table.probe(KEY1);
+        assertEquals("largest depth", 255, depth(data));
+        assertEquals("upper bound", UPPER, bound(data));
+        assertEquals("least score", Integer.MIN_VALUE + 1, score(data));
+        assertNull("no move", move(data));
+
+        table.store(KEY1, 255, EXACT, Integer.MAX_VALUE, mv("a1-b2"));
+        data = table.probe(KEY1);
+        assertEquals("exact", EXACT, bound(data));
+        assertEquals("greatest score", Integer.MAX_VALUE, score(data));
+        assertEquals("move a1-b2", mv("a1-b2"), move(data));
+
+        table.store(KEY2, 0, EXACT, 0, null);
+        assertNotEquals("zero entry present", 0, table.probe(KEY2));
+        assertEquals("KEY1 replaced by KEY2", 0, table.probe(KEY1));
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(4);
+        table.store(KEY1, 5, EXACT, 42, mv("c3-c5"));
+        table.store(KEY1, 3, LOWER, -7, mv("d4-e5"));
+        long data = table.probe(KEY1);
+        assertEquals("deeper entry kept", 5, depth(data));
+        assertEquals("deeper score kept", 42, score(data));
+        assertEquals("deeper move kept", mv("c3-c5"), move(data));
+
+        table.store(KEY1, 5, UPPER, 13, null);
+        data = table.probe(KEY1);
+        assertEquals("equal depth replaces", UPPER, bound(data));
+        assertEquals("replacing score", 13, score(data));
+
+        table.store(KEY2, 1, EXACT, 99, null);
+        assertEquals("other key always replaces", 1,
+                     depth(table.probe(KEY2)));
+        assertEquals("replaced key absent", 0, table.probe(KEY1));
+    }
+
+}
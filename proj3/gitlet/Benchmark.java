@@ -0,0 +1,368 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark harness for gitlet on large synthetic repositories.
+ * Builds a repository of N files of varied sizes in nested
+ * directories, with M commits spread over K branches, then times add,
+ * commit, status, log, find, checkout and merge on it.  Every command
+ * runs in its own JVM, as it would from the shell, through Probe,
+ * which reports the time spent inside the command and the bytes it
+ * allocated.  For each command the report gives the mean wall-clock
+ * time, the mean time inside the JVM, operations per second and
+ * allocation per operation; the size of .gitlet is reported after
+ * setup and at the end.
+ *
+ * Usage: java gitlet.Benchmark [--files=N] [--commits=M]
+ *        [--branches=K] [--max-size=BYTES] [--runs=R] [--seed=S]
+ *        [--keep]
+ *
+ * @author kenny liao
+ */
+public class Benchmark {
+
+    /** System property naming the file Probe reports to. */
+    static final String PROBE = "gitlet.probe";
+
+    /** Smallest generated file, in bytes. */
+    static final int MIN_SIZE = 16;
+
+    /** Length of a generated line, newline included. */
+    static final int LINE = 64;
+
+    /** Runs gitlet.Main in this JVM and, when it exits or returns,
+     *  writes the nanoseconds it took and the bytes all threads
+     *  allocated to the file named by the PROBE property. */
+    public static class Probe {
+        /** Runs gitlet with ARGS. */
+        public static void main(String... args) {
+            _start = System.nanoTime();
+            Runtime.getRuntime().addShutdownHook(new Thread(Probe::done));
+            Main.main(args);
+            done();
+        }
+
+        /** Writes the report, unless it has been written already.
+         *  Called before the main thread ends, so that what it
+         *  allocated is counted. */
+        private static synchronized void done() {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            Utils.writeContents(new File(System.getProperty(PROBE)),
+                (System.nanoTime() - _start) + " " + allocated());
+        }
+
+        /** Return the bytes allocated so far by all live threads. */
+        private static long allocated() {
+            com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+            long total = 0;
+            for (long id : mx.getAllThreadIds()) {
+                total += Math.max(0, mx.getThreadAllocatedBytes(id));
+            }
+            return total;
+        }
+
+        /** When gitlet started. */
+        private static long _start;
+
+        /** True once the report is written. */
+        private static boolean _done;
+    }
+
+    /** One timed run of a command. */
+    private static class Sample {
+        /** Wall-clock nanoseconds, JVM startup included. */
+        private long wall;
+        /** Nanoseconds inside gitlet.Main. */
+        private long inside;
+        /** Bytes allocated. */
+        private long bytes;
+    }
+
+    /** Runs the benchmark described by ARGS. */
+    public static void main(String... args) throws IOException {
+        Benchmark bench = new Benchmark();
+        boolean keep = false;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            switch (kv[0]) {
+            case "--files":
+                bench._files = Integer.parseInt(kv[1]);
+                break;
+            case "--commits":
+                bench._commits = Integer.parseInt(kv[1]);
+                break;
+            case "--branches":
+                bench._branches = Math.max(1, Integer.parseInt(kv[1]));
+                break;
+            case "--max-size":
+                bench._maxSize = Integer.parseInt(kv[1]);
+                break;
+            case "--runs":
+                bench._runs = Integer.parseInt(kv[1]);
+                break;
+            case "--seed":
+                bench._random = new Random(Long.parseLong(kv[1]));
+                break;
+            case "--keep":
+                keep = true;
+                break;
+            default:
+                System.err.println("Usage: java gitlet.Benchmark"
+                    + " [--files=N] [--commits=M] [--branches=K]"
+                    + " [--max-size=BYTES] [--runs=R] [--seed=S] [--keep]");
+                System.exit(1);
+            }
+        }
+        bench._dir = Files.createTempDirectory("gitlet-bench");
+        try {
+            bench.setup();
+            bench.measure();
+            bench.report();
+        } finally {
+            if (keep) {
+                System.out.println("Repository kept in " + bench._dir);
+            } else {
+                delete(bench._dir);
+            }
+        }
+    }
+
+    /** Builds the synthetic repository. */
+    private void setup() throws IOException {
+        System.out.printf("Building %d files, %d commits, %d branches"
+            + " in %s%n", _files, _commits, _branches, _dir);
+        long start = System.nanoTime();
+        _paths = new ArrayList<>();
+        for (int i = 0; i < _files; i += 1) {
+            _paths.add(String.format("d%02d/e%02d/f%06d.txt",
+                i % 16, (i / 16) % 16, i));
+            write(_paths.get(i));
+        }
+        gitlet("init");
+        gitlet("add", ".");
+        gitlet("commit", "commit 0");
+        for (int b = 1; b < _branches; b += 1) {
+            gitlet("branch", branch(b));
+        }
+        String current = "master";
+        int changed = Math.max(1, _files / 100);
+        for (int m = 1; m < _commits; m += 1) {
+            String next = branch(m % _branches);
+            if (!next.equals(current)) {
+                gitlet("checkout", next);
+                current = next;
+            }
+            gitlet(change(changed));
+            gitlet("commit", "commit " + m);
+        }
+        if (!current.equals("master")) {
+            gitlet("checkout", "master");
+        }
+        _setupBytes = size(_dir.resolve(".gitlet"));
+        System.out.printf("Built in %.1f s; .gitlet is %d bytes%n",
+            (System.nanoTime() - start) / 1e9, _setupBytes);
+    }
+
+    /** Times each command _runs times. */
+    private void measure() throws IOException {
+        for (int r = 0; r < _runs; r += 1) {
+            time("add", change(1));
+            gitlet(change(10));
+            time("commit", "commit", "bench " + r);
+            time("status", "status");
+            time("log", "log");
+            time("find", "find", "commit 1");
+            if (_branches > 1) {
+                time("checkout", "checkout", branch(1));
+                time("checkout", "checkout", "master");
+            }
+            String other = "merge" + r;
+            gitlet("branch", other);
+            gitlet("checkout", other);
+            gitlet(change(10));
+            gitlet("commit", "theirs " + r);
+            gitlet("checkout", "master");
+            gitlet(change(10));
+            gitlet("commit", "ours " + r);
+            time("merge", "merge", other);
+        }
+    }
+
+    /** Prints the results. */
+    private void report() throws IOException {
+        System.out.printf("%n%-10s %5s %10s %10s %10s %12s%n", "command",
+            "runs", "wall ms", "jvm ms", "ops/sec", "alloc KB/op");
+        for (Map.Entry<String, List<Sample>> e : _samples.entrySet()) {
+            List<Sample> runs = e.getValue();
+            double wall = 0, inside = 0, bytes = 0;
+            for (Sample s : runs) {
+                wall += s.wall;
+                inside += s.inside;
+                bytes += s.bytes;
+            }
+            int n = runs.size();
+            System.out.printf("%-10s %5d %10.1f %10.1f %10.1f %12.1f%n",
+                e.getKey(), n, wall / n / 1e6, inside / n / 1e6,
+                n / (wall / 1e9), bytes / n / 1024);
+        }
+        System.out.printf("%n.gitlet: %d bytes after setup, %d at end%n",
+            _setupBytes, size(_dir.resolve(".gitlet")));
+    }
+
+    /** Return the name of branch B, branch 0 being master. */
+    private static String branch(int b) {
+        return b == 0 ? "master" : "branch" + b;
+    }
+
+    /** Rewrites N random files and return the arguments of an add
+     *  command for them. */
+    private String[] change(int n) throws IOException {
+        String[] args = new String[n + 1];
+        args[0] = "add";
+        for (int i = 1; i <= n; i += 1) {
+            args[i] = _paths.get(_random.nextInt(_paths.size()));
+            write(args[i]);
+        }
+        return args;
+    }
+
+    /** Writes random lines to the file PATH, of a size between
+     *  MIN_SIZE and _maxSize, small sizes being as likely as large. */
+    private void write(String path) throws IOException {
+        double lo = Math.log(MIN_SIZE);
+        double hi = Math.log(Math.max(MIN_SIZE, _maxSize));
+        int size = (int) Math.exp(lo + _random.nextDouble() * (hi - lo));
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            data[i] = i % LINE == LINE - 1 ? (byte) '\n'
+                : (byte) ('a' + _random.nextInt(26));
+        }
+        Path file = _dir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, data);
+    }
+
+    /** Runs gitlet with ARGS and records it as a run of command OP. */
+    private void time(String op, String... args) throws IOException {
+        _samples.computeIfAbsent(op, k -> new ArrayList<>())
+            .add(gitlet(args));
+    }
+
+    /** Return a Sample of running gitlet with ARGS in _dir. */
+    private Sample gitlet(String... args) throws IOException {
+        File probe = Files.createTempFile("gitlet-probe", null).toFile();
+        List<String> cmd = new ArrayList<>(Arrays.asList(
+            Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString(),
+            "-cp", System.getProperty("java.class.path"),
+            "-D" + PROBE + "=" + probe.getAbsolutePath(),
+            Probe.class.getName()));
+        cmd.addAll(Arrays.asList(args));
+        ProcessBuilder pb = new ProcessBuilder(cmd)
+            .directory(_dir.toFile())
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+        Sample s = new Sample();
+        long start = System.nanoTime();
+        try {
+            pb.start().waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        s.wall = System.nanoTime() - start;
+        String[] out = new String(Files.readAllBytes(probe.toPath()),
+            StandardCharsets.UTF_8).trim().split(" ");
+        probe.delete();
+        if (out.length == 2) {
+            s.inside = Long.parseLong(out[0]);
+            s.bytes = Long.parseLong(out[1]);
+        }
+        return s;
+    }
+
+    /** Return the total size of the files under DIR. */
+    private static long size(Path dir) throws IOException {
+        long[] total = new long[1];
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs) {
+                total[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    /** Deletes DIR and everything under it. */
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d,
+                                                      IOException excp)
+                throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Number of files in the repository. */
+    private int _files = 1000;
+
+    /** Number of commits made during setup. */
+    private int _commits = 50;
+
+    /** Number of branches, master included. */
+    private int _branches = 4;
+
+    /** Largest generated file, in bytes. */
+    private int _maxSize = 1 << 16;
+
+    /** Number of times each command is timed. */
+    private int _runs = 5;
+
+    /** Source of file sizes, contents and choices. */
+    private Random _random = new Random(61);
+
+    /** Working directory of the repository. */
+    private Path _dir;
+
+    /** Paths of all files in the repository. */
+    private List<String> _paths;
+
+    /** Size of .gitlet after setup. */
+    private long _setupBytes;
+
+    /** The runs of each command, in the order first timed. */
+    private LinkedHashMap<String, List<Sample>> _samples =
+        new LinkedHashMap<>();
+}
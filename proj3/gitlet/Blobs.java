@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+
+/**
+ * Content-addressed store for file contents.  Every version of every
+ * file is kept exactly once under .gitlet/objects, named by the SHA-1
+ * of its contents, so commits only need to record name -> blob id and
+ * identical contents are shared across commits and branches.
+ * Files are streamed in and out byte for byte, so neither their size
+ * nor their encoding matters.  A blob is either loose, in its own
+ * file, or in the Pack.
+ *
+ * @author kenny liao
+ */
+class Blobs {
+
+    /** Directory holding all blobs. */
+    static final File OBJECTS = Utils.join(User.DIRECTORY, "objects");
+
+    /** Length of the directory prefix of a blob's path. */
+    static final int FANOUT = 2;
+
+    /** Return the raw 20-byte id FILE would have as a blob.  FILE is
+     *  hashed straight from the file system, never copied into the
+     *  heap. */
+    static byte[] digest(File file) {
+        Trace.read();
+        try {
+            return Utils.sha1Bytes(file.toPath());
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("Cannot read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Store the current contents of FILE if they are not stored yet,
+     *  and return their blob id.  FILE is hashed while it is copied,
+     *  so it is read once and never held in memory. */
+    static String store(File file) {
+        MessageDigest md = Utils.digest();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(OBJECTS.toPath(), "blob", null);
+            Trace.read();
+            Trace.written();
+            try (InputStream in = new DigestInputStream(
+                    Files.newInputStream(file.toPath()), md)) {
+                Trace.hashed(Files.copy(in, temp,
+                    StandardCopyOption.REPLACE_EXISTING));
+            }
+            String id = Utils.hex(md.digest());
+            install(temp, id);
+            return id;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot store %s: %s", file, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Store CONTENTS if not stored yet, and return their blob id. */
+    static String store(byte[] contents) {
+        String id = Utils.sha1(contents);
+        if (!contains(id)) {
+            File blob = file(id);
+            blob.getParentFile().mkdirs();
+            Utils.writeAtomically(blob, contents);
+        }
+        return id;
+    }
+
+    /** Return true iff blob ID is stored, loose or packed. */
+    static boolean contains(String id) {
+        return file(id).exists() || Pack.holding(id) != null;
+    }
+
+    /** Return the ids of all loose blobs. */
+    static ArrayList<String> loose() {
+        ArrayList<String> ids = new ArrayList<>();
+        File[] dirs = OBJECTS.listFiles();
+        if (dirs == null) {
+            return ids;
+        }
+        for (File dir : dirs) {
+            if (dir.isDirectory() && dir.getName().length() == FANOUT) {
+                for (String rest : Utils.plainFilenamesIn(dir)) {
+                    ids.add(dir.getName() + rest);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Move TEMP into place as the blob ID, unless that blob is
+     *  already stored. */
+    private static void install(Path temp, String id) throws IOException {
+        if (contains(id)) {
+            return;
+        }
+        File blob = file(id);
+        blob.getParentFile().mkdirs();
+        Files.move(temp, blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Return the contents of the blob ID.  A loose blob that is
+     *  gone by the time it is read has been packed by another process,
+     *  and is read from the pack. */
+    static byte[] read(String id) {
+        File blob = file(id);
+        if (blob.exists()) {
+            Trace.read();
+            try {
+                return Files.readAllBytes(blob.toPath());
+            } catch (NoSuchFileException excp) {
+                /* Packed since; read from the pack below. */
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read blob %s: %s", id,
+                        excp.getMessage());
+            }
+        }
+        Pack pack = Pack.holding(id);
+        byte[] contents = pack == null ? null : pack.read(id);
+        if (contents == null) {
+            throw Utils.error("Missing blob %s.", id);
+        }
+        return contents;
+    }
+
+    /** Return the size in bytes of the blob ID, without reading it. */
+    static long size(String id) {
+        File blob = file(id);
+        if (blob.exists()) {
+            try {
+                return Files.size(blob.toPath());
+            } catch (NoSuchFileException excp) {
+                /* Packed since; look in the pack below. */
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read blob %s: %s", id,
+                        excp.getMessage());
+            }
+        }
+        Pack pack = Pack.holding(id);
+        long size = pack == null ? -1 : pack.size(id);
+        if (size < 0) {
+            throw Utils.error("Missing blob %s.", id);
+        }
+        return size;
+    }
+
+    /** Overwrite DEST with the contents of the blob ID, letting the
+     *  file system copy them directly if the blob is loose.  Missing
+     *  directories above DEST are created. */
+    static void restore(String id, File dest) {
+        dest.getAbsoluteFile().getParentFile().mkdirs();
+        if (!file(id).exists() || !copyLoose(id, dest)) {
+            Utils.writeContents(dest, read(id));
+        }
+    }
+
+    /** Copy the loose blob ID to DEST, file to file, and return true;
+     *  or return false if ID is not loose after all, having been
+     *  packed by another process. */
+    private static boolean copyLoose(String id, File dest) {
+        FileChannel in;
+        try {
+            in = FileChannel.open(file(id).toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob %s: %s", id,
+                    excp.getMessage());
+        }
+        Trace.read();
+        Trace.written();
+        try (in; FileChannel out = FileChannel.open(dest.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long done = 0;
+            while (done < size) {
+                done += in.transferTo(done, size - done, out);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot check out %s: %s",
+                    dest, excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Return the file in which blob ID is stored. */
+    static File file(String id) {
+        return file(OBJECTS, id);
+    }
+
+    /** Return the file in which blob ID is stored loose in the object
+     *  directory OBJECTS. */
+    static File file(File objects, String id) {
+        return Utils.join(objects, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+}
@@ -1,11 +1,13 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * This class calls compare class on all file and get
@@ -15,9 +17,15 @@ import java.util.HashMap;
  * data adding on metadata to produce a new commit
  * In case of merge calls user class twice, merge, and create new commit.
  *
+ * A commit is stored in its canonical encoding, which is also what
+ * its id is the hash of: a few "key value" header lines giving its
+ * tree, parents, generation and time, a blank line, then the message.
+ * The tracked files are stored as a Tree per directory, so commits
+ * share every directory whose contents they have in common.
+ *
  * @author kenny liao
  */
-public class Commit implements Serializable {
+public class Commit {
 
     /** Records the first commit. */
     static final String FIRSTCOMMIT = "Thu Jan 1 00:00:00 1970 -0700";
@@ -25,86 +33,151 @@ public class Commit implements Serializable {
     /** For convienence. */
     static final int FORMAT = 8;
 
-    /** For convienence. */
-    static final int GITLET = 8;
+    /** Directory holding one file per commit, named by its id. */
+    static final File COMMITS = Utils.join(User.DIRECTORY, "commits");
 
     /**
      * Creates a new Commit with following
-     * MESSAGE, PARENT, STAGED and TIME.
+     * MESSAGE, PARENTS, PARENT tracked files, STAGED and TIME.
      */
-    Commit(String message, Date time,
-           ArrayList<File> parent, ArrayList<File> staged) {
+    Commit(String message, Date time, List<Commit> parents,
+           Map<String, String> parent, Map<String, String> staged) {
         _message = message;
-        _timestamp = time;
-        if (_timestamp != null) {
-            _time = _timestamp.toString();
-        } else {
-            _time = FIRSTCOMMIT;
+        _parents = new ArrayList<>();
+        _generation = 1;
+        for (Commit p : parents) {
+            _parents.add(p.getCode());
+            _generation = Math.max(_generation, p.getGeneration() + 1);
         }
+        _time = time == null ? 0 : time.getTime();
         _tracked = combine(parent, staged);
-        real = new HashMap<>();
-        makeCode();
+        _trees = new HashMap<>();
+        _tree = Tree.build(_tracked, _trees);
+        _code = Utils.sha1(encode());
+    }
+
+    /** A commit read back from its ENCODING, which has id CODE. */
+    private Commit(String code, String encoding) {
+        _code = code;
+        _parents = new ArrayList<>();
+        int end = encoding.indexOf("\n\n");
+        for (String line : encoding.substring(0, end).split("\n")) {
+            int space = line.indexOf(' ');
+            String value = line.substring(space + 1);
+            switch (line.substring(0, space)) {
+            case "tree":
+                _tree = value;
+                break;
+            case "parent":
+                _parents.add(value);
+                break;
+            case "generation":
+                _generation = Integer.parseInt(value);
+                break;
+            case "time":
+                _time = Long.parseLong(value);
+                break;
+            default:
+                throw Utils.error("Corrupt commit %s.", code);
+            }
+        }
+        _message = encoding.substring(end + 2);
     }
 
     /**
-     * Combine all data of PARENT and STAGED files
-     * passed in to be committed return comb.
+     * Combine the blob ids of PARENT and STAGED files
+     * passed in to be committed return comb.  Staged
+     * versions override the parent's.
      */
-    private ArrayList<File> combine(ArrayList<File> parent,
-                                    ArrayList<File> staged) {
-        ArrayList<File> comb = new ArrayList<>();
+    private TreeMap<String, String> combine(Map<String, String> parent,
+                                            Map<String, String> staged) {
+        TreeMap<String, String> comb = new TreeMap<>();
         if (parent != null) {
-            comb.addAll(parent);
+            comb.putAll(parent);
         }
         if (staged != null) {
-            comb.addAll(staged);
+            comb.putAll(staged);
         }
         return comb;
     }
 
-    /**
-     * Remove file with NAME in tracked.
-     */
-    public void remove(String name) {
-        name = name.substring(GITLET, name.length());
-        for (File f : _tracked) {
-            if (f.getName().equals(name)) {
-                _tracked.remove(f);
-                break;
-            }
+    /** Return the commit with id CODE, or null if there is none.
+     *  Only this commit is read; its parents are referred to by id. */
+    static Commit load(String code) {
+        File f = Utils.join(COMMITS, code);
+        if (!f.isFile()) {
+            return null;
         }
+        return parse(code, Utils.readContents(f));
     }
-    /** Set real to given hashmap H. */
-    public void setReal(HashMap<String, String> h) {
-        real.putAll(h);
+
+    /** Return the commit with id CODE whose canonical encoding is
+     *  ENCODING. */
+    static Commit parse(String code, byte[] encoding) {
+        Trace.decoded();
+        return new Commit(code, new String(encoding, StandardCharsets.UTF_8));
     }
 
-    /** Set _father to D. */
-    public void setFather(DoubleHT d) {
-        _father = d;
+    /** Writes this commit to its own file, and its trees to the
+     *  object store. */
+    public void save() {
+        Tree.write(_trees);
+        Utils.writeAtomically(Utils.join(COMMITS, _code), encode());
     }
 
-    /** Returns _father. */
-    public DoubleHT getFather() {
-        return _father;
+    /** Return the canonical encoding of this commit. */
+    private byte[] encode() {
+        StringBuilder s = new StringBuilder();
+        s.append("tree ").append(_tree).append('\n');
+        for (String p : _parents) {
+            s.append("parent ").append(p).append('\n');
+        }
+        s.append("generation ").append(_generation).append('\n');
+        s.append("time ").append(_time).append('\n');
+        s.append('\n').append(_message);
+        return s.toString().getBytes(StandardCharsets.UTF_8);
     }
 
 
+    /** Return the ids of the parents of this commit, the first parent
+     *  first.  Empty for the initial commit. */
+    public List<String> getParents() {
+        return _parents;
+    }
+
+    /** Return the id of the first parent, or null for the initial
+     *  commit. */
+    public String getParent() {
+        return _parents.isEmpty() ? null : _parents.get(0);
+    }
+
+    /** Return the generation number of this commit: 1 for the
+     *  initial commit, otherwise one more than that of its highest
+     *  parent.  A commit's ancestors all have lower numbers. */
+    public int getGeneration() {
+        return _generation;
+    }
+
     /**
-     * Returns the tracked files.
+     * Returns the tracked files as file name : blob id.  The tree is
+     * only read the first time it is needed.
      */
-    public ArrayList<File> getTracked() {
+    public TreeMap<String, String> getTracked() {
+        if (_tracked == null) {
+            _tracked = Tree.files(_tree);
+        }
         return _tracked;
     }
 
-    /** Return the file under track with name S. */
-    public File getFile(String s) {
-        for (File f: _tracked) {
-            if (f.getName().equals(s)) {
-                return f;
-            }
-        }
-        return null;
+    /** Return the blob id of the file under track with name S,
+     *  or null if S is not tracked. */
+    public String getBlob(String s) {
+        return getTracked().get(s);
+    }
+
+    /** Return the id of the tree of this commit. */
+    public String getTree() {
+        return _tree;
     }
 
     /**
@@ -114,11 +187,6 @@ public class Commit implements Serializable {
         return _code;
     }
 
-    /** Return real. */
-    public HashMap<String, String> getReal() {
-        return real;
-    }
-
     /**
      * Return _message.
      */
@@ -130,84 +198,72 @@ public class Commit implements Serializable {
      * Returns true if this Commit is tracking File with name FILE.
      */
     public boolean tracking(File file) {
-        for (File f: _tracked) {
-            if (f.getName().equals(file.getName())) {
-                return true;
-            }
-        }
-        return false;
+        return trackingR(Utils.path(file));
     }
     /**
      * Returns true if this Commit is tracking File with R name.
      */
     public boolean trackingR(String r) {
-        for (File f: _tracked) {
-            if (f.getName().equals(r)) {
-                return true;
-            }
-        }
-        return false;
+        return getTracked().containsKey(r);
     }
 
-
     /**
-     * Make code of this commit.
+     * Return string form of _timestamp.
      */
-    private void makeCode() {
-        File temp = new File("temp");
-        try {
-            temp.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeObject(temp, this);
-        _code = Utils.sha1(Utils.readContentsAsString(temp));
-        temp.delete();
+    public String time() {
+        return time(getTime());
     }
 
     /**
-     * Return string form of _timestamp.
+     * Return string form of the commit time MILLIS.
      */
-    public String time() {
-        if (_timestamp == null) {
-            return _time;
-        } else {
-            return _time.substring(0, _time.length() - FORMAT) + "2020 -0700";
+    static String time(long millis) {
+        if (millis == 0) {
+            return FIRSTCOMMIT;
         }
-    }
-
-    /** Change _tracked to BUFFER. */
-    public void changeTracked(ArrayList<File> buffer) {
-        _tracked = buffer;
+        String s = new Date(millis).toString();
+        return s.substring(0, s.length() - FORMAT) + "2020 -0700";
     }
 
     /**
-     * An arraylist that stores all the tracked files.
+     * Return the time of this commit in milliseconds since the
+     * epoch, or 0 for the initial commit.
      */
-    private ArrayList<File> _tracked;
+    public long getTime() {
+        return _time;
+    }
 
     /**
-     * Records time of Commit.
+     * Maps the name of every tracked file to the id of its blob, or
+     * null until the tree is read.
      */
-    private Date _timestamp;
+    private TreeMap<String, String> _tracked;
+
+    /** Id of the tree of this commit. */
+    private String _tree;
+
+    /** Encodings of the trees of a new commit by id, to be written
+     *  by save. */
+    private HashMap<String, byte[]> _trees;
 
     /**
-     * String of time.
+     * Records time of Commit in milliseconds, 0 for the initial
+     * commit.
      */
-    private String _time;
+    private long _time;
     /**
      * Records message.
      */
     private String _message;
 
-    /** Stores the DoubleHT that contains this commit. */
-    private DoubleHT _father;
+    /** Ids of the parents of this commit. */
+    private ArrayList<String> _parents;
+
+    /** Generation number of this commit. */
+    private int _generation;
 
     /**
      * Stores the code of the commit this Commit contains.
      */
     private String _code;
-
-    /** Hashmap that has code as key, and real file name as value. */
-    private HashMap<String, String> real;
 }
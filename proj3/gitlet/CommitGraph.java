@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The shape of the history, kept apart from the commits themselves:
+ * .gitlet/commit-graph holds one fixed-size record per commit, in the
+ * order they were made, giving its id, the positions of its parents in
+ * the file, its generation number and its time.  Walking the history
+ * with it reads one small file instead of deserializing every commit
+ * on the way.
+ *
+ * @author kenny liao
+ */
+class CommitGraph {
+
+    /** File holding the graph. */
+    static final File GRAPH = Utils.join(User.DIRECTORY, "commit-graph");
+
+    /** Length of a SHA-1 in bytes. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes per record: id, two parents, generation and time. */
+    static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Parent position of a missing parent. */
+    static final int NONE = -1;
+
+    /** Return the graph read from GRAPH. */
+    static CommitGraph load() {
+        return load(GRAPH);
+    }
+
+    /** Return the graph read from FILE. */
+    static CommitGraph load(File file) {
+        ByteBuffer buf = ByteBuffer.allocate(0);
+        if (file.isFile()) {
+            Trace.read();
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read commit graph: %s",
+                        excp.getMessage());
+            }
+        }
+        return new CommitGraph(buf);
+    }
+
+    /** A graph of the records in BUF. */
+    private CommitGraph(ByteBuffer buf) {
+        int n = buf.limit() / RECORD;
+        _ids = new String[n];
+        _parents = new int[n][2];
+        _generations = new int[n];
+        _times = new long[n];
+        _positions = new HashMap<>(n * 2);
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < n; i += 1) {
+            buf.get(id);
+            _ids[i] = Utils.hex(id);
+            _parents[i][0] = buf.getInt();
+            _parents[i][1] = buf.getInt();
+            _generations[i] = buf.getInt();
+            _times[i] = buf.getLong();
+            _positions.put(_ids[i], i);
+        }
+    }
+
+    /** Appends commit C to GRAPH.  Its parents are searched for from
+     *  the end of the file, where they almost always are, so this
+     *  rarely reads more than a few records. */
+    static void append(Commit c) {
+        append(GRAPH, c);
+    }
+
+    /** Appends commit C to the commit graph in FILE. */
+    static void append(File file, Commit c) {
+        Trace.written();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            List<String> parents = c.getParents();
+            byte[][] wanted = new byte[parents.size()][];
+            for (int k = 0; k < wanted.length; k += 1) {
+                wanted[k] = Utils.unhex(parents.get(k));
+            }
+            int[] found = {NONE, NONE};
+            ByteBuffer rec = ByteBuffer.allocate(RECORD);
+            byte[] id = new byte[ID_BYTES];
+            int left = parents.size();
+            for (long i = ch.size() / RECORD - 1; i >= 0 && left > 0; i -= 1) {
+                rec.clear();
+                ch.read(rec, i * RECORD);
+                rec.flip();
+                rec.get(id);
+                for (int k = 0; k < wanted.length; k += 1) {
+                    if (found[k] == NONE && Arrays.equals(wanted[k], id)) {
+                        found[k] = (int) i;
+                        left -= 1;
+                    }
+                }
+            }
+            if (left > 0) {
+                throw Utils.error("Commit graph is missing a parent of %s",
+                        c.getCode());
+            }
+            rec.clear();
+            rec.put(Utils.unhex(c.getCode()));
+            rec.putInt(found[0]).putInt(found[1]);
+            rec.putInt(c.getGeneration()).putLong(c.getTime());
+            rec.flip();
+            ch.write(rec, ch.size() / RECORD * RECORD);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit graph: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Rewrites GRAPH with only the commits whose positions are set
+     *  in KEEP, renumbering the parent positions.  The parents of a
+     *  kept commit must be kept too. */
+    void compact(boolean[] keep) {
+        int[] moved = new int[size()];
+        int n = 0;
+        for (int i = 0; i < size(); i += 1) {
+            moved[i] = keep[i] ? n++ : NONE;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(n * RECORD);
+        for (int i = 0; i < size(); i += 1) {
+            if (keep[i]) {
+                buf.put(Utils.unhex(_ids[i]));
+                for (int p : _parents[i]) {
+                    buf.putInt(p == NONE ? NONE : moved[p]);
+                }
+                buf.putInt(_generations[i]).putLong(_times[i]);
+            }
+        }
+        Utils.writeAtomically(GRAPH, buf.array());
+    }
+
+    /** Return the position of the commit with id CODE, or NONE. */
+    int position(String code) {
+        Integer i = _positions.get(code);
+        return i == null ? NONE : i;
+    }
+
+    /** Return the id of the commit at position I. */
+    String id(int i) {
+        return _ids[i];
+    }
+
+    /** Return the position of the first parent of the commit at
+     *  position I, or NONE. */
+    int parent(int i) {
+        return _parents[i][0];
+    }
+
+    /** Return the positions of the parents of the commit at
+     *  position I; missing parents are NONE. */
+    int[] parents(int i) {
+        return _parents[i];
+    }
+
+    /** Return the generation number of the commit at position I. */
+    int generation(int i) {
+        return _generations[i];
+    }
+
+    /** Return the time of the commit at position I. */
+    long time(int i) {
+        return _times[i];
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _ids.length;
+    }
+
+    /** Ids of commits by position. */
+    private final String[] _ids;
+
+    /** Parent positions of commits by position. */
+    private final int[][] _parents;
+
+    /** Generation numbers of commits by position. */
+    private final int[] _generations;
+
+    /** Times of commits by position. */
+    private final long[] _times;
+
+    /** Maps id : position. */
+    private final HashMap<String, Integer> _positions;
+}
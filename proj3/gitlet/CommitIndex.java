@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Index over every commit ever made, so that commands never need to
+ * scan the whole history.  .gitlet/commit-index is an append-only log
+ * of (id, message) records, each string written as its length and its
+ * UTF-8 bytes, so making a commit never reads it.  .gitlet/commit-ids
+ * holds the length of a prefix of the log, then the ids of the
+ * records in that prefix, sorted, each with the position of its
+ * record.  Both files are mapped rather than read, so a full or
+ * abbreviated id is found by a binary search of commit-ids and a look
+ * at the few records appended since, and only find reads the whole
+ * log.  commit-ids is rebuilt once TAIL_LIMIT bytes of log follow the
+ * part it covers.
+ * <p>
+ * A record still being appended when the log is read is ignored, and
+ * the next append overwrites it.  If an entry of commit-ids does not
+ * match the log, as when gc has rewritten both since one was opened,
+ * the index falls back to reading the whole log.
+ *
+ * @author kenny liao
+ */
+class CommitIndex {
+
+    /** File holding the log of commits. */
+    static final File INDEX = Utils.join(User.DIRECTORY, "commit-index");
+
+    /** File holding the sorted ids. */
+    static final File IDS = Utils.join(User.DIRECTORY, "commit-ids");
+
+    /** Length of a SHA-1 in bytes. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes per entry of IDS: an id and the position of its record. */
+    static final int ENTRY = ID_BYTES + 4;
+
+    /** Bytes of IDS before its first entry: the length of log it
+     *  covers. */
+    static final int HEADER = 4;
+
+    /** IDS is rebuilt when more than this many bytes of log follow
+     *  the part it covers. */
+    static final int TAIL_LIMIT = 1 << 16;
+
+    /** Return the index read from INDEX. */
+    static CommitIndex load() {
+        return load(INDEX);
+    }
+
+    /** Return the commit index whose log is FILE, with its sorted ids
+     *  beside it. */
+    static CommitIndex load(File file) {
+        Trace.read();
+        return new CommitIndex(map(file), map(ids(file)));
+    }
+
+    /** Appends commit C to the index on disk without reading it. */
+    static void append(Commit c) {
+        append(INDEX, c);
+    }
+
+    /** Appends commit C to the commit index whose log is FILE,
+     *  overwriting any record left half written, and rebuilds its
+     *  sorted ids if too much of the log follows them. */
+    static void append(File file, Commit c) {
+        Trace.written();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            CommitIndex index = new CommitIndex(
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()),
+                map(ids(file)));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeString(out, c.getCode());
+                writeString(out, c.getMessage());
+            }
+            ch.truncate(index._end);
+            ch.write(ByteBuffer.wrap(bytes.toByteArray()), index._end);
+            if (index._end + bytes.size() - index._covered > TAIL_LIMIT) {
+                index = new CommitIndex(
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()),
+                    EMPTY);
+                Utils.writeAtomically(ids(file),
+                                      table(index._tail, index._end));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Rewrites INDEX, and IDS to match it, with only the commits in
+     *  KEEP, in the order they were made. */
+    void compact(Set<String> keep) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TreeMap<String, Integer> sorted = new TreeMap<>();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int at = 0, end; (end = end(_log, at)) >= 0; at = end) {
+                String id = id(at);
+                if (keep.contains(id) && !sorted.containsKey(id)) {
+                    sorted.put(id, out.size());
+                    writeString(out, id);
+                    writeString(out, message(at));
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write commit index: %s",
+                    excp.getMessage());
+        }
+        Utils.writeAtomically(INDEX, bytes.toByteArray());
+        Utils.writeAtomically(IDS, table(sorted, bytes.size()));
+    }
+
+    /** An index of the log LOG with sorted ids IDS, either of which may
+     *  be empty.  IDS is ignored unless it is well formed and covers
+     *  no more than LOG holds. */
+    private CommitIndex(ByteBuffer log, ByteBuffer ids) {
+        _log = log;
+        _ids = ids;
+        _covered = ids.limit() >= HEADER
+            && (ids.limit() - HEADER) % ENTRY == 0 ? ids.getInt(0) : -1;
+        if (_covered < 0 || _covered > log.limit()) {
+            _ids = EMPTY;
+            _covered = 0;
+        }
+        scanTail();
+    }
+
+    /** Return the sorted ids file of the commit index whose log is
+     *  FILE. */
+    private static File ids(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(),
+                        IDS.getName());
+    }
+
+    /** Return the contents of FILE, mapped, or EMPTY if there is no
+     *  FILE. */
+    private static ByteBuffer map(File file) {
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Return the contents of a sorted ids file covering COVERED bytes
+     *  of log, whose records are at the positions SORTED gives for
+     *  their ids. */
+    private static byte[] table(TreeMap<String, Integer> sorted,
+                                int covered) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + sorted.size() * ENTRY);
+        buf.putInt(covered);
+        for (String id : sorted.keySet()) {
+            buf.put(Utils.unhex(id)).putInt(sorted.get(id));
+        }
+        return buf.array();
+    }
+
+    /** Return the end of the record of LOG at position AT, or -1 if
+     *  there is no complete record there. */
+    private static int end(ByteBuffer log, int at) {
+        for (int k = 0; k < 2; k += 1) {
+            if (at < 0 || at > log.limit() - 4) {
+                return -1;
+            }
+            int length = log.getInt(at);
+            if (length < 0 || length > log.limit() - at - 4) {
+                return -1;
+            }
+            at += 4 + length;
+        }
+        return at;
+    }
+
+    /** Return the string at position AT of LOG. */
+    private static String string(ByteBuffer log, int at) {
+        byte[] bytes = new byte[log.getInt(at)];
+        ByteBuffer b = log.duplicate();
+        b.position(at + 4);
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the id of the record at position AT of the log. */
+    private String id(int at) {
+        return string(_log, at);
+    }
+
+    /** Return the message of the record at position AT of the log. */
+    private String message(int at) {
+        return string(_log, at + 4 + _log.getInt(at));
+    }
+
+    /** Read the records of the log after the part _ids covers into
+     *  _tail, and set _end to the end of the last. */
+    private void scanTail() {
+        _tail = new TreeMap<>();
+        int at = _covered;
+        for (int end; (end = end(_log, at)) >= 0; at = end) {
+            _tail.put(id(at), at);
+        }
+        _end = at;
+    }
+
+    /** Forget _ids, which does not match the log, and index the whole
+     *  log in _tail instead. */
+    private void fallBack() {
+        _ids = EMPTY;
+        _covered = 0;
+        scanTail();
+    }
+
+    /** Return the number of entries in _ids. */
+    private int entries() {
+        return (_ids.limit() - HEADER) / ENTRY;
+    }
+
+    /** Return the id of entry I of _ids. */
+    private String entryId(int i) {
+        byte[] id = new byte[ID_BYTES];
+        ByteBuffer b = _ids.duplicate();
+        b.position(HEADER + i * ENTRY);
+        b.get(id);
+        return Utils.hex(id);
+    }
+
+    /** Return the position in the log of the record of entry I of
+     *  _ids, or -1 if that record is not in the log, in which case
+     *  the index falls back to the log alone. */
+    private int record(int i) {
+        int at = _ids.getInt(HEADER + i * ENTRY + ID_BYTES);
+        if (at >= _covered || end(_log, at) < 0
+            || !id(at).equals(entryId(i))) {
+            fallBack();
+            return -1;
+        }
+        return at;
+    }
+
+    /** Return the first entry of _ids whose id is not less than
+     *  PREFIX, or entries() if there is none. */
+    private int lowerBound(String prefix) {
+        int lo = 0, hi = entries();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entryId(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the position in the log of the record of commit CODE,
+     *  or -1 if there is none. */
+    private int position(String code) {
+        Integer at = _tail.get(code);
+        if (at != null) {
+            return at;
+        }
+        int i = lowerBound(code);
+        if (i < entries() && entryId(i).equals(code)) {
+            int rec = record(i);
+            return rec >= 0 ? rec : position(code);
+        }
+        return -1;
+    }
+
+    /**
+     * Return the full id of the only commit whose id starts with
+     * PREFIX, or null if there is none or PREFIX is ambiguous.
+     */
+    String find(String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        TreeSet<String> found = new TreeSet<>();
+        for (int i = lowerBound(prefix); i < entries() && found.size() < 2
+                 && entryId(i).startsWith(prefix); i += 1) {
+            if (record(i) < 0) {
+                return find(prefix);
+            }
+            found.add(entryId(i));
+        }
+        for (String id : _tail.tailMap(prefix).keySet()) {
+            if (found.size() >= 2 || !id.startsWith(prefix)) {
+                break;
+            }
+            found.add(id);
+        }
+        return found.size() == 1 ? found.first() : null;
+    }
+
+    /** Return the message of the commit with id CODE. */
+    String message(String code) {
+        int at = position(code);
+        return at < 0 ? null : message(at);
+    }
+
+    /** Return the ids of all commits whose message is exactly M, in
+     *  the order they were made.  Reads the whole log. */
+    List<String> withMessage(String m) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (int at = 0, end; (end = end(_log, at)) >= 0; at = end) {
+            if (message(at).equals(m)) {
+                ids.add(id(at));
+            }
+        }
+        return ids;
+    }
+
+    /** Writes S to OUT as its length in UTF-8 bytes and those bytes.
+     *  Unlike writeUTF, this takes strings of any length. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** An empty file. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** The log, mapped. */
+    private final ByteBuffer _log;
+
+    /** The sorted ids, mapped, or EMPTY. */
+    private ByteBuffer _ids;
+
+    /** The length of the log _ids covers. */
+    private int _covered;
+
+    /** Maps id : position of its record, for the records of the log
+     *  after the part _ids covers. */
+    private TreeMap<String, Integer> _tail;
+
+    /** The end of the last complete record of the log. */
+    private int _end;
+}
@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of CommitIndex.
+ *  @author kenny liao
+ */
+public class CommitIndexTest {
+
+    /** Return a commit with MESSAGE and no files. */
+    static Commit commit(String message) {
+        return new Commit(message, new Date(0), Collections.emptyList(),
+                          Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /** Return the log of a commit index in a new temporary
+     *  directory. */
+    static File log() throws IOException {
+        File dir = Files.createTempDirectory("commit-index").toFile();
+        return new File(dir, CommitIndex.INDEX.getName());
+    }
+
+    /** Delete the directory holding LOG and everything in it. */
+    static void delete(File log) {
+        File dir = log.getParentFile();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /** Return N commits, appended to LOG, whose messages start with
+     *  TAG. */
+    static List<Commit> append(File log, String tag, int n) {
+        ArrayList<Commit> commits = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            Commit c = commit(tag + " " + i);
+            CommitIndex.append(log, c);
+            commits.add(c);
+        }
+        return commits;
+    }
+
+    @Test
+    public void longMessages() throws IOException {
+        File log = log();
+        try {
+            StringBuilder s = new StringBuilder();
+            while (s.length() < 100000) {
+                s.append("A long message, \u00e9t\u00e9 \u2603.\n");
+            }
+            String big = s.toString();
+            Commit a = commit("short");
+            Commit b = commit(big);
+            CommitIndex.append(log, a);
+            CommitIndex.append(log, b);
+            CommitIndex index = CommitIndex.load(log);
+            assertEquals("short", index.message(a.getCode()));
+            assertEquals(big, index.message(b.getCode()));
+            assertEquals(b.getCode(), index.withMessage(big).get(0));
+            assertEquals(b.getCode(),
+                         index.find(b.getCode().substring(0, 8)));
+        } finally {
+            delete(log);
+        }
+    }
+
+    @Test
+    public void tornRecord() throws IOException {
+        File log = log();
+        try {
+            Commit a = commit("first");
+            Commit b = commit("torn");
+            Commit c = commit("after the torn one");
+            CommitIndex.append(log, a);
+            CommitIndex.append(log, b);
+            try (RandomAccessFile f = new RandomAccessFile(log, "rw")) {
+                f.setLength(f.length() - 3);
+            }
+            CommitIndex index = CommitIndex.load(log);
+            assertEquals("first", index.message(a.getCode()));
+            assertNull(index.message(b.getCode()));
+
+            CommitIndex.append(log, c);
+            index = CommitIndex.load(log);
+            assertEquals("first", index.message(a.getCode()));
+            assertNull(index.find(b.getCode()));
+            assertEquals(c.getCode(), index.find(c.getCode().substring(0, 6)));
+            assertEquals("after the torn one", index.message(c.getCode()));
+        } finally {
+            delete(log);
+        }
+    }
+
+    @Test
+    public void manyCommits() throws IOException {
+        File log = log();
+        try {
+            List<Commit> commits = append(log, "Commit number", 5000);
+            assertTrue(new File(log.getParentFile(),
+                                CommitIndex.IDS.getName()).isFile());
+            CommitIndex index = CommitIndex.load(log);
+            for (Commit c : commits) {
+                String code = c.getCode();
+                assertEquals(code, index.find(code));
+                assertEquals(code, index.find(code.substring(0, 10)));
+                assertEquals(c.getMessage(), index.message(code));
+            }
+            assertNull(index.find(""));
+            assertNull(index.find("0"));
+            assertNull(index.find("not an id"));
+            assertEquals(commits.get(4321).getCode(),
+                         index.withMessage("Commit number 4321").get(0));
+        } finally {
+            delete(log);
+        }
+    }
+
+    @Test
+    public void staleIds() throws IOException {
+        File log1 = log(), log2 = log();
+        try {
+            List<Commit> old = append(log1, "Old", 3000);
+            List<Commit> now = append(log2, "A different commit", 3500);
+            Files.copy(new File(log1.getParentFile(),
+                                CommitIndex.IDS.getName()).toPath(),
+                       new File(log2.getParentFile(),
+                                CommitIndex.IDS.getName()).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            CommitIndex index = CommitIndex.load(log2);
+            assertNull(index.find(old.get(10).getCode()));
+            for (Commit c : now) {
+                assertEquals(c.getCode(),
+                             index.find(c.getCode().substring(0, 10)));
+                assertEquals(c.getMessage(), index.message(c.getCode()));
+            }
+        } finally {
+            delete(log1);
+            delete(log2);
+        }
+    }
+
+}
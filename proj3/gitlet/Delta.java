@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Delta encoding of one byte array against another, for storing
+ * similar versions of a file in a pack.  A delta is a sequence of
+ * instructions that rebuild the target from the base: COPY a range of
+ * the base, or INSERT literal bytes.  Matches are found by indexing
+ * every BLOCK-byte block of the base.
+ *
+ * @author kenny liao
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+
+    /** Instruction copying a range of the base. */
+    static final int COPY = 0;
+
+    /** Instruction inserting literal bytes. */
+    static final int INSERT = 1;
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(target.length);
+            int literal = 0;
+            int i = 0;
+            while (i < target.length) {
+                Integer at = i + BLOCK <= target.length
+                        ? blocks.get(hash(target, i)) : null;
+                int len = at == null ? 0 : match(base, at, target, i);
+                if (len < BLOCK) {
+                    i += 1;
+                    continue;
+                }
+                insert(out, target, literal, i);
+                out.writeByte(COPY);
+                out.writeInt(at);
+                out.writeInt(len);
+                i += len;
+                literal = i;
+            }
+            insert(out, target, literal, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error creating delta.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(delta))) {
+            byte[] result = new byte[in.readInt()];
+            int n = 0;
+            while (n < result.length) {
+                int op = in.readByte();
+                if (op == COPY) {
+                    int at = in.readInt();
+                    int len = in.readInt();
+                    System.arraycopy(base, at, result, n, len);
+                    n += len;
+                } else {
+                    int len = in.readInt();
+                    in.readFully(result, n, len);
+                    n += len;
+                }
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Corrupt delta.");
+        }
+    }
+
+    /** Write an instruction inserting TARGET[FROM .. TO) to OUT, if
+     *  that range is not empty. */
+    private static void insert(DataOutputStream out, byte[] target,
+                               int from, int to) throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return the length of the longest common run of BASE starting at
+     *  B and TARGET starting at T. */
+    private static int match(byte[] base, int b, byte[] target, int t) {
+        int len = 0;
+        while (b + len < base.length && t + len < target.length
+                && base[b + len] == target[t + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at I. */
+    private static int hash(byte[] data, int i) {
+        int h = 1;
+        for (int k = i; k < i + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,50 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of Delta.
+ *  @author kenny liao
+ */
+public class DeltaTest {
+
+    /** Return a delta from BASE to TARGET, checking that it rebuilds
+     *  TARGET. */
+    static byte[] roundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta;
+    }
+
+    @Test
+    public void similarVersions() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 500; i += 1) {
+            s.append("Line ").append(i).append(" of the first version.\n");
+        }
+        byte[] base = s.toString().getBytes(StandardCharsets.UTF_8);
+        s.insert(4000, "A line added in the middle.\n");
+        s.append("And one at the end.\n");
+        byte[] target = s.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < target.length / 10);
+    }
+
+    @Test
+    public void unrelatedAndEmpty() {
+        Random r = new Random(61);
+        byte[] a = new byte[5000];
+        byte[] b = new byte[3000];
+        r.nextBytes(a);
+        r.nextBytes(b);
+        roundTrip(a, b);
+        roundTrip(a, new byte[0]);
+        roundTrip(new byte[0], b);
+        roundTrip(a, a);
+    }
+
+}
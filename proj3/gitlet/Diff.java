@@ -0,0 +1,570 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Line diffs by Myers' algorithm, which finds a shortest edit script
+ * between sequences of N and M lines in O((N + M) D) time, D being
+ * the length of the script.  Files are split into lines without being
+ * decoded: each line is a range of the file's bytes, and equal lines
+ * are given equal numbers so that comparing lines is comparing ints.
+ * Lines common to the start or end of both files are set aside before
+ * the search, as are lines found in only one of the files, so that the
+ * search only sees lines that may match.  The search itself takes
+ * space linear in N + M.  Diffs are written in unified format straight
+ * to an output stream.
+ *
+ * @author kenny liao
+ */
+class Diff {
+
+    /** The lines of one file. */
+    static class Lines {
+
+        /** The lines of DATA, numbered by NUMBERS. */
+        Lines(byte[] data, Numbering numbers) {
+            _data = data;
+            int n = count(data);
+            _starts = new int[n + 1];
+            _ids = new int[n];
+            int line = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n') {
+                    line += 1;
+                    _starts[line] = i + 1;
+                }
+            }
+            _starts[n] = data.length;
+            for (int i = 0; i < n; i += 1) {
+                _ids[i] = numbers.number(data, _starts[i], _starts[i + 1]);
+            }
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return _ids.length;
+        }
+
+        /** Return the number of line I; equal lines have equal
+         *  numbers. */
+        int id(int i) {
+            return _ids[i];
+        }
+
+        /** Writes lines FROM .. TO - 1 to OUT. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            out.write(_data, _starts[from], _starts[to] - _starts[from]);
+        }
+
+        /** Return true iff line I ends in a newline. */
+        boolean terminated(int i) {
+            return _data[_starts[i + 1] - 1] == '\n';
+        }
+
+        /** The contents of the file. */
+        private final byte[] _data;
+
+        /** Offset of the start of each line, and of the end. */
+        private final int[] _starts;
+
+        /** Number of each line. */
+        private final int[] _ids;
+    }
+
+    /** Numbers distinct lines, across any number of files. */
+    static class Numbering {
+
+        /** Return the number of the line DATA[FROM .. TO - 1]. */
+        int number(byte[] data, int from, int to) {
+            Integer n = _numbers.putIfAbsent(new Key(data, from, to),
+                    _numbers.size());
+            return n == null ? _numbers.size() - 1 : n;
+        }
+
+        /** A line, compared by contents. */
+        private static class Key {
+            /** The line DATA[FROM .. TO - 1]. */
+            Key(byte[] data, int from, int to) {
+                _data = data;
+                _from = from;
+                _to = to;
+                int h = 1;
+                for (int i = from; i < to; i += 1) {
+                    h = 31 * h + data[i];
+                }
+                _hash = h;
+            }
+
+            @Override
+            public int hashCode() {
+                return _hash;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                Key k = (Key) o;
+                return _hash == k._hash
+                    && Arrays.equals(_data, _from, _to, k._data, k._from,
+                                     k._to);
+            }
+
+            /** Bytes holding the line. */
+            private final byte[] _data;
+            /** Start of the line. */
+            private final int _from;
+            /** End of the line. */
+            private final int _to;
+            /** Hash of the line. */
+            private final int _hash;
+        }
+
+        /** Maps line : number. */
+        private final HashMap<Key, Integer> _numbers = new HashMap<>();
+    }
+
+    /**
+     * Return the hunks in which B differs from A, in order.  A hunk
+     * {A0, A1, B0, B1} replaces lines A0 .. A1 - 1 of A by lines
+     * B0 .. B1 - 1 of B; either range may be empty.
+     */
+    static List<int[]> diff(Lines a, Lines b) {
+        int n = a.size();
+        int m = b.size();
+        int pre = 0;
+        while (pre < n && pre < m && a.id(pre) == b.id(pre)) {
+            pre += 1;
+        }
+        int suf = 0;
+        while (suf < n - pre && suf < m - pre
+               && a.id(n - 1 - suf) == b.id(m - 1 - suf)) {
+            suf += 1;
+        }
+        boolean[] deleted = new boolean[n];
+        boolean[] inserted = new boolean[m];
+        changes(a, b, pre, n - suf, m - suf, deleted, inserted);
+
+        ArrayList<int[]> hunks = new ArrayList<>();
+        int i = pre;
+        int j = pre;
+        while (i < n || j < m) {
+            if (i < n && j < m && !deleted[i] && !inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < n && deleted[i] || j < m && inserted[j]) {
+                if (i < n && deleted[i]) {
+                    i += 1;
+                } else {
+                    j += 1;
+                }
+            }
+            hunks.add(new int[] {i0, i, j0, j});
+        }
+        return hunks;
+    }
+
+    /**
+     * Marks in DELETED the lines of A, and in INSERTED the lines of B,
+     * that a shortest edit script turning lines PRE .. AEND - 1 of A
+     * into lines PRE .. BEND - 1 of B deletes and inserts.  A line
+     * found nowhere in the other range is certainly deleted or
+     * inserted, so it is marked at once and the search only sees the
+     * lines that may match; a file rewritten from end to end costs
+     * nothing to search.
+     */
+    private static void changes(Lines a, Lines b, int pre, int aEnd,
+                                int bEnd, boolean[] deleted,
+                                boolean[] inserted) {
+        int ids = 0;
+        for (int i = pre; i < aEnd; i += 1) {
+            ids = Math.max(ids, a.id(i) + 1);
+        }
+        for (int j = pre; j < bEnd; j += 1) {
+            ids = Math.max(ids, b.id(j) + 1);
+        }
+        boolean[] inA = new boolean[ids];
+        boolean[] inB = new boolean[ids];
+        for (int i = pre; i < aEnd; i += 1) {
+            inA[a.id(i)] = true;
+        }
+        for (int j = pre; j < bEnd; j += 1) {
+            inB[b.id(j)] = true;
+        }
+        int[] x = matchable(a, pre, aEnd, inB, deleted);
+        int[] y = matchable(b, pre, bEnd, inA, inserted);
+        int[] xs = new int[x.length];
+        int[] ys = new int[y.length];
+        for (int i = 0; i < x.length; i += 1) {
+            xs[i] = a.id(x[i]);
+        }
+        for (int j = 0; j < y.length; j += 1) {
+            ys[j] = b.id(y[j]);
+        }
+        boolean[] xDeleted = new boolean[x.length];
+        boolean[] yInserted = new boolean[y.length];
+        int size = 2 * (x.length + y.length) + 3;
+        int cost = Math.max(MIN_COST, (int) Math.sqrt(size));
+        new Myers(xs, ys, xDeleted, yInserted, new int[size], new int[size],
+                  cost).compare(0, x.length, 0, y.length);
+        for (int i = 0; i < x.length; i += 1) {
+            deleted[x[i]] = xDeleted[i];
+        }
+        for (int j = 0; j < y.length; j += 1) {
+            inserted[y[j]] = yInserted[j];
+        }
+    }
+
+    /** Return the lines FROM .. TO - 1 of LINES whose numbers are in
+     *  OTHER, marking the rest in CHANGED. */
+    private static int[] matchable(Lines lines, int from, int to,
+                                   boolean[] other, boolean[] changed) {
+        int[] kept = new int[to - from];
+        int n = 0;
+        for (int i = from; i < to; i += 1) {
+            if (other[lines.id(i)]) {
+                kept[n] = i;
+                n += 1;
+            } else {
+                changed[i] = true;
+            }
+        }
+        return Arrays.copyOf(kept, n);
+    }
+
+    /**
+     * Myers' algorithm in linear space.  Rather than keep every step of
+     * the search to trace the path back, which takes O(D^2) space, it
+     * searches from both ends at once until the two searches meet on a
+     * "middle snake", splits the problem there and solves each half
+     * the same way.  Only two vectors of O(N + M) ints are needed, and
+     * are shared by every level of the recursion.  As in git, a search
+     * that has made more than a given number of edits without the ends
+     * meeting gives up on the shortest path and splits at the furthest
+     * point it reached instead, so that the time taken stays near
+     * linear however different the files are; the script is then
+     * still correct, only perhaps longer than need be.
+     */
+    private static class Myers {
+
+        /** A search for the edits turning the line numbers A into B,
+         *  marking them in DELETED and INSERTED, using FORWARD and
+         *  BACKWARD, of length 2 * (|A| + |B|) + 3, as work space.
+         *  Each split gives up after COST edits from either end. */
+        Myers(int[] a, int[] b, boolean[] deleted, boolean[] inserted,
+              int[] forward, int[] backward, int cost) {
+            _a = a;
+            _b = b;
+            _deleted = deleted;
+            _inserted = inserted;
+            _forward = forward;
+            _backward = backward;
+            _mid = forward.length / 2;
+            _cost = cost;
+        }
+
+        /** Marks the edits turning A[A0 .. A1 - 1] into
+         *  B[B0 .. B1 - 1].  The second half of each split is done by
+         *  looping, so that uneven splits do not recurse deeply. */
+        void compare(int a0, int a1, int b0, int b1) {
+            while (true) {
+                while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+                    a0 += 1;
+                    b0 += 1;
+                }
+                while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+                    a1 -= 1;
+                    b1 -= 1;
+                }
+                if (a0 == a1) {
+                    Arrays.fill(_inserted, b0, b1, true);
+                    return;
+                } else if (b0 == b1) {
+                    Arrays.fill(_deleted, a0, a1, true);
+                    return;
+                }
+                int x = split(a0, a1, b0, b1);
+                int y = _split;
+                compare(a0, x, b0, y);
+                a0 = x;
+                b0 = y;
+            }
+        }
+
+        /**
+         * Return the x of a point (x, y) on a shortest path through the
+         * edit graph of A[A0 .. A1 - 1] and B[B0 .. B1 - 1], leaving y
+         * in _split.  The ranges are not empty and differ at both ends,
+         * so the point is neither end of the path.  After _cost edits
+         * from each end, the point is instead the furthest the search
+         * from the start has reached inside the edit graph, other than
+         * the end.  _forward[_mid + k]
+         * is the furthest x reached on diagonal x - y = k searching from
+         * the start; _backward[_mid + k] is the furthest distance back
+         * from the end reached on diagonal (A1 - x) - (B1 - y) = k.
+         */
+        private int split(int a0, int a1, int b0, int b1) {
+            int n = a1 - a0;
+            int m = b1 - b0;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int[] vf = _forward;
+            int[] vb = _backward;
+            int mid = _mid;
+            vf[mid + 1] = 0;
+            vb[mid + 1] = 0;
+            for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d
+                        || k != d && vf[mid + k - 1] < vf[mid + k + 1]) {
+                        x = vf[mid + k + 1];
+                    } else {
+                        x = vf[mid + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    vf[mid + k] = x;
+                    int r = delta - k;
+                    if (odd && r >= -(d - 1) && r <= d - 1
+                        && x >= n - vb[mid + r]) {
+                        _split = b0 + y;
+                        return a0 + x;
+                    }
+                }
+                for (int r = -d; r <= d; r += 2) {
+                    int x;
+                    if (r == -d
+                        || r != d && vb[mid + r - 1] < vb[mid + r + 1]) {
+                        x = vb[mid + r + 1];
+                    } else {
+                        x = vb[mid + r - 1] + 1;
+                    }
+                    int y = x - r;
+                    while (x < n && y < m
+                           && _a[a1 - 1 - x] == _b[b1 - 1 - y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    vb[mid + r] = x;
+                    int k = delta - r;
+                    if (!odd && k >= -d && k <= d
+                        && vf[mid + k] >= n - x) {
+                        _split = b0 + vf[mid + k] - k;
+                        return a0 + vf[mid + k];
+                    }
+                }
+                if (d >= _cost) {
+                    int x = furthest(a0, b0, n, m, d);
+                    if (x >= 0) {
+                        return x;
+                    }
+                }
+            }
+            throw Utils.error("No middle snake found.");
+        }
+
+        /** Return the x of the point other than (A0 + N, B0 + M) that
+         *  the search from (A0, B0) has reached with most progress after
+         *  D > 0 edits, leaving its y in _split, or -1 if it has reached
+         *  none inside the edit graph. */
+        private int furthest(int a0, int b0, int n, int m, int d) {
+            int best = 0;
+            int bestK = 0;
+            for (int k = -d; k <= d; k += 2) {
+                int x = _forward[_mid + k];
+                int y = x - k;
+                if (x <= n && y >= 0 && y <= m && (x < n || y < m)
+                    && x + y > best) {
+                    best = x + y;
+                    bestK = k;
+                }
+            }
+            if (best == 0) {
+                return -1;
+            }
+            int x = _forward[_mid + bestK];
+            _split = b0 + x - bestK;
+            return a0 + x;
+        }
+
+        /** Line numbers of the two sequences. */
+        private final int[] _a, _b;
+        /** Where the edits are marked. */
+        private final boolean[] _deleted, _inserted;
+        /** Furthest points reached from each end, by diagonal. */
+        private final int[] _forward, _backward;
+        /** Index in _forward and _backward of diagonal 0. */
+        private final int _mid;
+        /** Edits from each end after which a split gives up. */
+        private final int _cost;
+        /** The y of the point split last returned. */
+        private int _split;
+    }
+
+    /** The fewest edits from each end a search makes before giving up
+     *  on the shortest edit script; more are allowed for longer
+     *  files. */
+    static final int MIN_COST = 256;
+
+    /** Lines of context around each change in a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** Files larger than this many bytes are not diffed line by line.
+     *  Such files are not even read. */
+    static final long LIMIT = 1 << 24;
+
+    /** Files of more than this many lines are not diffed line by line.
+     *  A diff takes a few hundred bytes per line, in the numbering of
+     *  lines and the search, on top of the files themselves, so with
+     *  LIMIT this bounds the memory a diff takes to about 100 MB. */
+    static final int LINE_LIMIT = 1 << 18;
+
+    /** Bytes of a file looked at to decide whether it is binary. */
+    static final int SNIFF = 8000;
+
+    /**
+     * Writes to OUT a unified diff turning A, the contents of file
+     * NAME, into B; either is null if the file is absent.  Of binary
+     * files, and files too large to diff, it is only said that they
+     * differ.
+     */
+    static void unified(String name, byte[] a, byte[] b, OutputStream out)
+        throws IOException {
+        String from = a == null ? "/dev/null" : "a/" + name;
+        String to = b == null ? "/dev/null" : "b/" + name;
+        write(out, "diff --gitlet a/" + name + " b/" + name + "\n");
+        byte[] none = new byte[0];
+        a = a == null ? none : a;
+        b = b == null ? none : b;
+        if (binary(a) || binary(b)) {
+            write(out, "Binary files " + from + " and " + to + " differ\n");
+            return;
+        }
+        if (!diffable(a) || !diffable(b)) {
+            write(out, "Files " + from + " and " + to + " differ\n");
+            return;
+        }
+        write(out, "--- " + from + "\n+++ " + to + "\n");
+        Numbering numbers = new Numbering();
+        Lines x = new Lines(a, numbers);
+        Lines y = new Lines(b, numbers);
+        List<int[]> hunks = diff(x, y);
+        int first = 0;
+        while (first < hunks.size()) {
+            int last = first;
+            while (last + 1 < hunks.size()
+                   && hunks.get(last + 1)[0] - hunks.get(last)[1]
+                      <= 2 * CONTEXT) {
+                last += 1;
+            }
+            writeHunk(x, y, hunks.subList(first, last + 1), out);
+            first = last + 1;
+        }
+    }
+
+    /** Return true iff DATA is small enough to be diffed line by line:
+     *  at most LIMIT bytes and LINE_LIMIT lines. */
+    static boolean diffable(byte[] data) {
+        return data.length <= LIMIT && count(data) <= LINE_LIMIT;
+    }
+
+    /** Return the number of lines in DATA, counting a last line that
+     *  does not end in a newline. */
+    private static int count(byte[] data) {
+        int n = 0;
+        for (byte c : data) {
+            if (c == '\n') {
+                n += 1;
+            }
+        }
+        if (data.length > 0 && data[data.length - 1] != '\n') {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Writes to OUT that file NAME differs, without saying how; it
+     *  is absent before unless BEFORE, and after unless AFTER.  Used
+     *  for files over LIMIT, which are not read. */
+    static void differ(String name, boolean before, boolean after,
+                       OutputStream out) throws IOException {
+        write(out, "diff --gitlet a/" + name + " b/" + name + "\n");
+        write(out, "Files " + (before ? "a/" + name : "/dev/null") + " and "
+              + (after ? "b/" + name : "/dev/null") + " differ\n");
+    }
+
+    /** Writes HUNKS, which are close enough to share context, from A
+     *  to B as one hunk of a unified diff to OUT. */
+    private static void writeHunk(Lines a, Lines b, List<int[]> hunks,
+                                  OutputStream out) throws IOException {
+        int[] first = hunks.get(0);
+        int[] last = hunks.get(hunks.size() - 1);
+        int aStart = Math.max(0, first[0] - CONTEXT);
+        int aEnd = Math.min(a.size(), last[1] + CONTEXT);
+        int bStart = first[2] - (first[0] - aStart);
+        int bEnd = last[3] + (aEnd - last[1]);
+        write(out, "@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd)
+              + " @@\n");
+        int at = aStart;
+        for (int[] h : hunks) {
+            writeLines(out, ' ', a, at, h[0]);
+            writeLines(out, '-', a, h[0], h[1]);
+            writeLines(out, '+', b, h[2], h[3]);
+            at = h[1];
+        }
+        writeLines(out, ' ', a, at, aEnd);
+    }
+
+    /** Return lines START .. END - 1 as a unified diff range. */
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    /** Writes lines FROM .. TO - 1 of LINES to OUT, each preceded by
+     *  MARK. */
+    private static void writeLines(OutputStream out, char mark, Lines lines,
+                                   int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(mark);
+            lines.write(out, i, i + 1);
+            if (!lines.terminated(i)) {
+                write(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Return true iff DATA looks binary: it has a NUL byte near the
+     *  start. */
+    private static boolean binary(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, SNIFF); i += 1) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes S to OUT. */
+    private static void write(OutputStream out, String s)
+        throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of Diff and Merge.
+ *  @author kenny liao
+ */
+public class DiffTest {
+
+    /** Lines in the large files. */
+    static final int LARGE = 20000;
+
+    /** Return the lines of TEXT, numbered by NUMBERS. */
+    static Diff.Lines lines(String text, Diff.Numbering numbers) {
+        return new Diff.Lines(text.getBytes(StandardCharsets.UTF_8), numbers);
+    }
+
+    /** Return LARGE lines: every tenth is "}", shared by any two such
+     *  files, and the rest are TAG followed by the line number. */
+    static String large(String tag) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < LARGE; i += 1) {
+            s.append(i % 10 == 0 ? "}" : tag + " " + i).append('\n');
+        }
+        return s.toString();
+    }
+
+    /** Return the text of B rebuilt from A, whose lines are X, and
+     *  the lines Y of B, by applying HUNKS. */
+    static String apply(String[] x, String[] y, List<int[]> hunks) {
+        StringBuilder s = new StringBuilder();
+        int at = 0;
+        for (int[] h : hunks) {
+            for (int i = at; i < h[0]; i += 1) {
+                s.append(x[i]).append('\n');
+            }
+            for (int j = h[2]; j < h[3]; j += 1) {
+                s.append(y[j]).append('\n');
+            }
+            at = h[1];
+        }
+        for (int i = at; i < x.length; i += 1) {
+            s.append(x[i]).append('\n');
+        }
+        return s.toString();
+    }
+
+    /** Return the number of lines HUNKS delete and insert. */
+    static int edits(List<int[]> hunks) {
+        int n = 0;
+        for (int[] h : hunks) {
+            n += h[1] - h[0] + h[3] - h[2];
+        }
+        return n;
+    }
+
+    @Test
+    public void smallDiffs() {
+        String a = "a\nb\nc\na\nb\nb\na\n";
+        String b = "c\nb\na\nb\na\nc\n";
+        Diff.Numbering numbers = new Diff.Numbering();
+        List<int[]> hunks = Diff.diff(lines(a, numbers), lines(b, numbers));
+        assertEquals(b, apply(a.split("\n"), b.split("\n"), hunks));
+        assertEquals(5, edits(hunks));
+
+        numbers = new Diff.Numbering();
+        hunks = Diff.diff(lines(a, numbers), lines(a, numbers));
+        assertTrue(hunks.isEmpty());
+
+        numbers = new Diff.Numbering();
+        hunks = Diff.diff(lines("", numbers), lines(b, numbers));
+        assertEquals(1, hunks.size());
+        assertEquals(6, edits(hunks));
+    }
+
+    @Test
+    public void largeRewrite() {
+        String a = large("old");
+        String b = large("new");
+        Diff.Numbering numbers = new Diff.Numbering();
+        List<int[]> hunks = Diff.diff(lines(a, numbers), lines(b, numbers));
+        assertEquals(b, apply(a.split("\n"), b.split("\n"), hunks));
+        assertEquals(2 * (LARGE - LARGE / 10), edits(hunks));
+    }
+
+    @Test
+    public void largeUnifiedDiff() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified("big.txt", large("old").getBytes(StandardCharsets.UTF_8),
+                     large("new").getBytes(StandardCharsets.UTF_8), out);
+        String diff = out.toString(StandardCharsets.UTF_8);
+        assertTrue(diff.startsWith("diff --gitlet a/big.txt b/big.txt\n"
+                                   + "--- a/big.txt\n+++ b/big.txt\n@@ "));
+        assertTrue(diff.contains("\n-old 1\n"));
+        assertTrue(diff.contains("\n+new " + (LARGE - 1) + "\n"));
+    }
+
+    @Test
+    public void largeMerge() throws IOException {
+        File dest = File.createTempFile("merge", ".txt");
+        try {
+            byte[] base = large("base").getBytes(StandardCharsets.UTF_8);
+            byte[] ours = large("ours").getBytes(StandardCharsets.UTF_8);
+            assertFalse(Merge.merge(base, ours, base, dest));
+            assertArrayEquals(ours, Files.readAllBytes(dest.toPath()));
+            byte[] theirs = large("theirs").getBytes(StandardCharsets.UTF_8);
+            assertTrue(Merge.merge(base, ours, theirs, dest));
+        } finally {
+            dest.delete();
+        }
+    }
+
+    @Test
+    public void tooManyLines() throws IOException {
+        byte[] lines = new byte[2 * (Diff.LINE_LIMIT + 1)];
+        for (int i = 0; i < lines.length; i += 2) {
+            lines[i] = 'x';
+            lines[i + 1] = '\n';
+        }
+        assertFalse(Diff.diffable(lines));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified("big.txt", null, lines, out);
+        assertEquals("diff --gitlet a/big.txt b/big.txt\n"
+                     + "Files /dev/null and b/big.txt differ\n",
+                     out.toString(StandardCharsets.UTF_8));
+    }
+
+}
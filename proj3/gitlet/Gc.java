@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Garbage collection.  Commits left behind by rm-branch and reset, and
+ * the trees and blobs only they used, are kept forever otherwise.  Gc
+ * marks every commit reachable from a branch, remote branches
+ * included, and every tree and blob those commits or the staging area
+ * use; then it compacts the commit graph and commit index down to the
+ * live commits, deletes the other commit files and loose objects, and
+ * packs what remains.  A tree is live only if its commit is, and then
+ * so is everything in it, so a tree that survives is still complete.
+ *
+ * @author kenny liao
+ */
+class Gc {
+
+    /** Collects garbage, keeping the blobs STAGED, which maps file
+     *  name : blob id, as well as everything reachable. */
+    static void collect(Map<String, String> staged) {
+        CommitGraph graph = CommitGraph.load();
+        boolean[] live = new boolean[graph.size()];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (String branch : Refs.branches()) {
+            int i = graph.position(Refs.get(branch));
+            if (i != CommitGraph.NONE && !live[i]) {
+                live[i] = true;
+                queue.add(i);
+            }
+        }
+        HashSet<String> commits = new HashSet<>();
+        HashSet<String> objects = new HashSet<>();
+        HashMap<String, String> names = new HashMap<>();
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            commits.add(graph.id(i));
+            markTree(Commit.load(graph.id(i)).getTree(), "", objects, names);
+            for (int p : graph.parents(i)) {
+                if (p != CommitGraph.NONE && !live[p]) {
+                    live[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+        for (Map.Entry<String, String> e : staged.entrySet()) {
+            objects.add(e.getValue());
+            names.putIfAbsent(e.getValue(), e.getKey());
+        }
+
+        graph.compact(live);
+        CommitIndex.load().compact(commits);
+        for (String code : Utils.plainFilenamesIn(Commit.COMMITS)) {
+            if (!commits.contains(code)) {
+                Utils.join(Commit.COMMITS, code).delete();
+            }
+        }
+        sweep(Blobs.loose(), objects);
+        Pack.pack(names, objects);
+    }
+
+    /** Adds tree ID, and every subtree and blob in it, to OBJECTS,
+     *  recording in NAMES the path of each blob not yet named.  The
+     *  tree is under directory PREFIX.  A tree already in OBJECTS has
+     *  been marked whole and is not read again. */
+    private static void markTree(String id, String prefix,
+                                 HashSet<String> objects,
+                                 HashMap<String, String> names) {
+        if (id == null || !objects.add(id)) {
+            return;
+        }
+        for (Map.Entry<String, String[]> e : Tree.entries(id).entrySet()) {
+            String[] entry = e.getValue();
+            String path = prefix + e.getKey();
+            if (entry[0].equals(Tree.TREE)) {
+                markTree(entry[1], path + "/", objects, names);
+            } else {
+                objects.add(entry[1]);
+                names.putIfAbsent(entry[1], path);
+            }
+        }
+    }
+
+    /** Deletes every loose object in IDS that is not in LIVE, and any
+     *  fan-out directory left empty. */
+    private static void sweep(Collection<String> ids,
+                              Collection<String> live) {
+        for (String id : ids) {
+            if (!live.contains(id)) {
+                File loose = Blobs.file(id);
+                if (loose.delete()) {
+                    loose.getParentFile().delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Advisory lock on a gitlet directory, held in .gitlet/lock by every
+ * command that changes the repository, so that two such commands never
+ * interleave their writes.  Commands that only read do not take it:
+ * every file they read is either replaced atomically or only ever
+ * appended to, so they see a consistent state without waiting.  The
+ * lock is released when the process exits.
+ *
+ * @author kenny liao
+ */
+class Lock {
+
+    /** Name of the lock file in a gitlet directory. */
+    static final String NAME = "lock";
+
+    /** Waits until this process holds the lock on the gitlet
+     *  directory DIR. */
+    static void acquire(File dir) {
+        lock(dir, true);
+    }
+
+    /** Takes the lock on the gitlet directory DIR if no other process
+     *  holds it, and return true iff this process now holds it. */
+    static boolean tryAcquire(File dir) {
+        return lock(dir, false);
+    }
+
+    /** Lock DIR, waiting for it iff WAIT, and return true iff this
+     *  process then holds the lock. */
+    private static synchronized boolean lock(File dir, boolean wait) {
+        File file = Utils.join(dir, NAME).getAbsoluteFile();
+        if (HELD.containsKey(file)) {
+            return true;
+        }
+        try {
+            FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = wait ? ch.lock() : ch.tryLock();
+            if (lock == null) {
+                ch.close();
+                return false;
+            }
+            HELD.put(file, lock);
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot lock %s: %s", dir, excp.getMessage());
+        }
+    }
+
+    /** The locks this process holds, by lock file. */
+    private static final HashMap<File, FileLock> HELD = new HashMap<>();
+}
@@ -1,6 +1,10 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
@@ -14,25 +18,47 @@ public class Main {
      */
     private static User _user;
 
+    /** Commands that never write to the repository, and so run
+     *  without taking its Lock. */
+    private static final Set<String> READ_ONLY =
+        Set.of("log", "global-log", "find");
+
+    /** Commands that save what they learn about the working files
+     *  only if the Lock is free, and otherwise just read. */
+    private static final Set<String> SCANNING = Set.of("status", "diff");
+
+    /** True iff a SCANNING command holds the Lock, and so may save
+     *  the stat cache. */
+    private static boolean _locked;
+
 
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
      * <COMMAND> <OPERAND> ....
      */
     public static void main(String... args) {
+        Trace.start(args);
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             System.exit(0);
         }
-        File buffer = new File(".gitlet/USER");
-        if (buffer.exists()) {
-            _user = Utils.readObject(buffer, User.class);
-            _user.update();
+        if (Refs.HEAD.exists()) {
+            if (SCANNING.contains(args[0])) {
+                _locked = Lock.tryAcquire(User.DIRECTORY);
+            } else if (!READ_ONLY.contains(args[0])) {
+                Lock.acquire(User.DIRECTORY);
+            }
+            _user = User.load();
         } else if (!args[0].equals("init")) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
-        process(args);
+        try {
+            process(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
     }
 
     /** Responds to commands corresponding to ARGS. */
@@ -48,12 +74,7 @@ public class Main {
             _user.save();
             break;
         case "add":
-            File temp = new File(args[1]);
-            if (!temp.exists()) {
-                System.out.println("File does not exist.");
-                System.exit(0);
-            }
-            _user.add(temp);
+            _user.add(operands(args));
             _user.save();
             break;
         case "commit":
@@ -76,21 +97,37 @@ public class Main {
             break;
         case "status":
             _user.status();
+            if (_locked) {
+                _user.save();
+            }
+            break;
+        case "diff":
+            if (args.length > 3) {
+                System.out.println("Incorrect operands.");
+                System.exit(0);
+            }
+            _user.diff(Arrays.asList(args).subList(1, args.length));
+            if (_locked) {
+                _user.save();
+            }
+            break;
+        case "pack":
+            _user.pack();
+            break;
+        case "gc":
+            _user.gc();
             break;
         case "add-remote":
-            DoubleHT.remote(_user.getD());
-            _user.save();
+            Remote.add(args[1], args[2]);
             break;
         case "fetch":
-            DoubleHT.fetch(args[2]);
+            Remote.fetch(args[1], args[2]);
             break;
         case "rm-remote":
-            DoubleHT.rm(args[1]);
+            Remote.remove(args[1]);
             break;
         case "push":
-            DoubleHT.push(_user.getD());
-            _user.getD();
-            _user.save();
+            Remote.push(args[1], args[2], _user.getH().getCode());
             break;
         default:
             second(args);
@@ -102,21 +139,15 @@ public class Main {
         switch (args[0]) {
         case "checkout":
             File temp3;
-            if (_user.warning()) {
-                System.out.println("There is an untracked file "
-                        + "in the way; delete it, or add and commit it first.");
-                System.exit(0);
-            }
             if (args[1].equals("--")) {
                 temp3 = new File(args[2]);
-                _user.checkout(_user.getH().getCommit().getCode(), temp3);
+                _user.checkout(_user.getH().getCode(), temp3);
             } else {
                 if (args.length > 2 && args[2].equals("--")) {
                     temp3 = new File(args[3]);
                     _user.checkout(args[1], temp3);
                 } else if (args.length == 2) {
                     _user.switchBranch(args[1]);
-                    _user.checkAll();
                 } else {
                     System.out.println("Incorrect operands.");
                     System.exit(0);
@@ -133,11 +164,6 @@ public class Main {
             _user.save();
             break;
         case "reset":
-            if (_user.warning()) {
-                System.out.println("There is an untracked file in"
-                        + " the way; delete it, or add and commit it first.");
-                System.exit(0);
-            }
             _user.reset(args[1]);
             _user.save();
             break;
@@ -150,12 +176,48 @@ public class Main {
             _user.merge(args[1]);
             _user.save();
             break;
+        case "pull":
+            if (_user.warning()) {
+                System.out.println("There is an untracked file in the"
+                        + " way; delete it, or add and commit it first.");
+                System.exit(0);
+            }
+            Remote.fetch(args[1], args[2]);
+            _user.merge(args[1] + "/" + args[2]);
+            _user.save();
+            break;
         default:
             System.out.println("No command with that name exists.");
             System.exit(0);
         }
     }
 
+    /** Return the files named by the operands of add in ARGS, where
+     *  "." stands for every plain file in the working directory and
+     *  its subdirectories. */
+    private static List<File> operands(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        ArrayList<File> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals(".")) {
+                for (String name : Utils.workingFiles()) {
+                    files.add(new File(name));
+                }
+                continue;
+            }
+            File temp = new File(args[i]);
+            if (!temp.exists()) {
+                System.out.println("File does not exist.");
+                System.exit(0);
+            }
+            files.add(temp);
+        }
+        return files;
+    }
+
     /** Return ARGS in appropriate form. */
     static String split(String[] args) {
         StringBuilder ret = new StringBuilder();
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Three-way merge of the lines of a file.  The changes from the base
+ * to each side are found with Diff; changes that do not touch the same
+ * lines of the base are both applied, as are identical changes, and
+ * only where the two sides changed the same lines differently is a
+ * conflict written, covering just those lines.  The three versions
+ * are held in memory, but the result is written out as it is
+ * produced.
+ *
+ * @author kenny liao
+ */
+class Merge {
+
+    /** Start of a conflict; our version follows. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Between our version and theirs. */
+    static final String SEPARATOR = "=======\n";
+
+    /** End of a conflict. */
+    static final String END = ">>>>>>>\n";
+
+    /**
+     * Writes to DEST the merge of OURS and THEIRS, both changed from
+     * BASE, and return true iff it has a conflict.  If any of them is
+     * too large to diff, the whole file conflicts.
+     */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         File dest) {
+        if (!Diff.diffable(base) || !Diff.diffable(ours)
+            || !Diff.diffable(theirs)) {
+            conflict(ours, theirs, dest);
+            return true;
+        }
+        Diff.Numbering numbers = new Diff.Numbering();
+        Diff.Lines b = new Diff.Lines(base, numbers);
+        Diff.Lines o = new Diff.Lines(ours, numbers);
+        Diff.Lines t = new Diff.Lines(theirs, numbers);
+        List<int[]> oHunks = Diff.diff(b, o);
+        List<int[]> tHunks = Diff.diff(b, t);
+        dest.getAbsoluteFile().getParentFile().mkdirs();
+        Trace.written();
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(dest.toPath()))) {
+            return merge(b, o, oHunks, t, tHunks, out);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s: %s", dest, excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes to OUT the merge of lines O and T, which differ from B by
+     * hunks OHUNKS and THUNKS, and return true iff it has a conflict.
+     * Hunks of either side whose ranges of B overlap or touch are
+     * gathered into one region; a region only one side changed is
+     * taken from that side.
+     */
+    private static boolean merge(Diff.Lines b, Diff.Lines o,
+                                 List<int[]> oHunks, Diff.Lines t,
+                                 List<int[]> tHunks, OutputStream out)
+        throws IOException {
+        boolean conflict = false;
+        int oi = 0;
+        int ti = 0;
+        int oShift = 0;
+        int tShift = 0;
+        int done = 0;
+        while (oi < oHunks.size() || ti < tHunks.size()) {
+            int lo = Math.min(start(oHunks, oi), start(tHunks, ti));
+            int hi = lo;
+            int oFirst = oi;
+            int tFirst = ti;
+            while (true) {
+                if (start(oHunks, oi) <= hi) {
+                    hi = Math.max(hi, oHunks.get(oi)[1]);
+                    oi += 1;
+                } else if (start(tHunks, ti) <= hi) {
+                    hi = Math.max(hi, tHunks.get(ti)[1]);
+                    ti += 1;
+                } else {
+                    break;
+                }
+            }
+            b.write(out, done, lo);
+            int oFrom = lo + oShift;
+            int tFrom = lo + tShift;
+            oShift += shift(oHunks, oFirst, oi);
+            tShift += shift(tHunks, tFirst, ti);
+            int oTo = hi + oShift;
+            int tTo = hi + tShift;
+            if (tFirst == ti) {
+                o.write(out, oFrom, oTo);
+            } else if (oFirst == oi || same(o, oFrom, oTo, t, tFrom, tTo)) {
+                t.write(out, tFrom, tTo);
+            } else {
+                out.write(OURS.getBytes());
+                o.write(out, oFrom, oTo);
+                out.write(SEPARATOR.getBytes());
+                t.write(out, tFrom, tTo);
+                out.write(END.getBytes());
+                conflict = true;
+            }
+            done = hi;
+        }
+        b.write(out, done, b.size());
+        return conflict;
+    }
+
+    /** Return the first line of B changed by hunk I of HUNKS, or
+     *  Integer.MAX_VALUE if there is none. */
+    private static int start(List<int[]> hunks, int i) {
+        return i < hunks.size() ? hunks.get(i)[0] : Integer.MAX_VALUE;
+    }
+
+    /** Return the number of lines hunks FROM .. TO - 1 of HUNKS add. */
+    private static int shift(List<int[]> hunks, int from, int to) {
+        int shift = 0;
+        for (int i = from; i < to; i += 1) {
+            int[] h = hunks.get(i);
+            shift += (h[3] - h[2]) - (h[1] - h[0]);
+        }
+        return shift;
+    }
+
+    /** Return true iff lines A0 .. A1 - 1 of A are lines B0 .. B1 - 1
+     *  of B. */
+    private static boolean same(Diff.Lines a, int a0, int a1,
+                                Diff.Lines b, int b0, int b1) {
+        if (a1 - a0 != b1 - b0) {
+            return false;
+        }
+        for (int i = 0; i < a1 - a0; i += 1) {
+            if (a.id(a0 + i) != b.id(b0 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes a whole-file conflict between OURS and THEIRS, either
+     *  of which may be null for a deleted file, to DEST. */
+    static void conflict(byte[] ours, byte[] theirs, File dest) {
+        byte[] none = new byte[0];
+        dest.getAbsoluteFile().getParentFile().mkdirs();
+        Utils.writeContents(dest, OURS, ours == null ? none : ours,
+                SEPARATOR, theirs == null ? none : theirs, END);
+    }
+}
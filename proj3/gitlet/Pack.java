@@ -0,0 +1,449 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A pack: many blobs in one file, each zlib-compressed and, where a
+ * similar version of the same file exists, stored as a Delta against
+ * it.  NAME.pack holds the objects one after another; NAME.idx holds
+ * their ids in sorted order with their offsets, so any object is found
+ * by binary search.  Both files are memory-mapped, each as one buffer,
+ * so a pack is never written past MAX_SIZE bytes.
+ * <p>
+ * A new pack is written under a new name, taken from the hash of its
+ * index, and then made current by atomically replacing the file
+ * CURRENT, which holds the name; only after that are the loose copies
+ * of its blobs and the old pack deleted.  A reader that does not hold
+ * the lock thus always finds a data file and index that belong
+ * together, and a blob that has just left the loose objects is in the
+ * current pack, which a reader that misses a blob opens again.
+ *
+ * @author kenny liao
+ */
+class Pack {
+
+    /** Directory holding the pack. */
+    static final File DIR = Utils.join(Blobs.OBJECTS, "pack");
+
+    /** File holding the name of the current pack. */
+    static final File CURRENT = Utils.join(DIR, "current");
+
+    /** Name of the pack of a repository packed before packs had
+     *  names, used when there is no CURRENT. */
+    static final String OLD_NAME = "objects";
+
+    /** Suffix of the file holding the packed objects. */
+    static final String DATA = ".pack";
+
+    /** Suffix of the file holding the index of the packed objects. */
+    static final String INDEX = ".idx";
+
+    /** Times a pack is looked up again if it is replaced while it is
+     *  being opened. */
+    static final int RETRIES = 10;
+
+    /** Type of an object stored whole. */
+    static final int FULL = 0;
+
+    /** Type of an object stored as a delta against another. */
+    static final int DELTA = 1;
+
+    /** Longest chain of deltas allowed, bounding the cost of a read. */
+    static final int MAX_DEPTH = 10;
+
+    /** Blobs larger than this are left loose rather than packed. */
+    static final long PACK_LIMIT = 1 << 26;
+
+    /** Largest pack written, in bytes, so that offsets fit in the one
+     *  buffer a pack is mapped into.  Blobs that would make the pack
+     *  larger are left loose. */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /** Bytes per index entry: id and offset. */
+    static final int ENTRY = CommitGraph.ID_BYTES + 8;
+
+    /** Return the current pack, or null if nothing is packed. */
+    static synchronized Pack current() {
+        if (!_opened) {
+            _opened = true;
+            _current = open(DIR);
+        }
+        return _current;
+    }
+
+    /** Return the pack holding blob ID, or null if no pack does.  If
+     *  the pack opened before lacks ID, the pack is opened again in
+     *  case another process has since replaced it with one that took
+     *  ID from the loose objects. */
+    static synchronized Pack holding(String id) {
+        Pack pack = current();
+        if (pack != null && pack.contains(id)) {
+            return pack;
+        }
+        String name = name(DIR);
+        if (name != null && (pack == null || !name.equals(pack._name))) {
+            _current = pack = open(DIR);
+        }
+        return pack != null && pack.contains(id) ? pack : null;
+    }
+
+    /** Return the pack in the pack directory DIR, or null if there is
+     *  none, as when reading another repository. */
+    static Pack open(File dir) {
+        for (int tries = 1; true; tries += 1) {
+            String name = name(dir);
+            if (name == null) {
+                return null;
+            }
+            try {
+                return new Pack(dir, name);
+            } catch (NoSuchFileException excp) {
+                if (tries == RETRIES) {
+                    throw Utils.error("Cannot read pack: %s",
+                        excp.getMessage());
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read pack: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the name of the current pack in the pack directory DIR,
+     *  or null if there is none. */
+    private static String name(File dir) {
+        File current = Utils.join(dir, CURRENT.getName());
+        if (current.isFile()) {
+            Trace.read();
+            try {
+                return new String(Files.readAllBytes(current.toPath()),
+                    StandardCharsets.UTF_8);
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read pack: %s", excp.getMessage());
+            }
+        }
+        return Utils.join(dir, OLD_NAME + INDEX).isFile() ? OLD_NAME : null;
+    }
+
+    /** The pack NAME in the pack directory DIR. */
+    private Pack(File dir, String name) throws IOException {
+        _name = name;
+        _index = map(Utils.join(dir, name + INDEX));
+        _data = map(Utils.join(dir, name + DATA));
+        _count = _index.getInt(0);
+    }
+
+    /** Return FILE mapped read-only. */
+    private static MappedByteBuffer map(File file) throws IOException {
+        Trace.read();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    /** Return true iff blob ID is in this pack. */
+    boolean contains(String id) {
+        return offset(id) >= 0;
+    }
+
+    /** Return the contents of blob ID, or null if it is not packed. */
+    byte[] read(String id) {
+        long off = offset(id);
+        if (off < 0) {
+            return null;
+        }
+        ByteBuffer buf = _data.duplicate();
+        buf.position((int) off);
+        int type = buf.get();
+        byte[] base = null;
+        if (type == DELTA) {
+            byte[] baseId = new byte[CommitGraph.ID_BYTES];
+            buf.get(baseId);
+            base = read(Utils.hex(baseId));
+        }
+        int size = buf.getInt();
+        byte[] packed = new byte[buf.getInt()];
+        buf.get(packed);
+        byte[] payload = inflate(packed, size);
+        Trace.decoded();
+        return type == DELTA ? Delta.apply(base, payload) : payload;
+    }
+
+    /** Return the size of blob ID, or -1 if it is not packed.  Of a
+     *  delta only the first bytes, which hold the size of its result,
+     *  are inflated. */
+    long size(String id) {
+        long off = offset(id);
+        if (off < 0) {
+            return -1;
+        }
+        ByteBuffer buf = _data.duplicate();
+        buf.position((int) off);
+        int type = buf.get();
+        if (type == DELTA) {
+            buf.position(buf.position() + CommitGraph.ID_BYTES);
+        }
+        int size = buf.getInt();
+        if (type != DELTA) {
+            return size;
+        }
+        byte[] packed = new byte[buf.getInt()];
+        buf.get(packed);
+        return ByteBuffer.wrap(inflate(packed, 4)).getInt();
+    }
+
+    /** Return the ids of all objects in this pack. */
+    ArrayList<String> ids() {
+        ArrayList<String> ids = new ArrayList<>();
+        byte[] id = new byte[CommitGraph.ID_BYTES];
+        ByteBuffer buf = _index.duplicate();
+        for (int i = 0; i < _count; i += 1) {
+            buf.position(4 + i * ENTRY);
+            buf.get(id);
+            ids.add(Utils.hex(id));
+        }
+        return ids;
+    }
+
+    /** Return the offset of blob ID in the data file, or -1. */
+    private long offset(String id) {
+        byte[] key = Utils.unhex(id);
+        byte[] probe = new byte[CommitGraph.ID_BYTES];
+        ByteBuffer buf = _index.duplicate();
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            buf.position(4 + mid * ENTRY);
+            buf.get(probe);
+            int c = Arrays.compareUnsigned(probe, key);
+            if (c == 0) {
+                return buf.getLong();
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Packs every blob, loose or already packed, that is at most
+     * PACK_LIMIT bytes into a new pack and deletes the loose copies.
+     * NAMES maps blob ids to the name of a file that had them; the
+     * versions of each file are sorted by size and each is stored as
+     * a delta against the previous one when that saves at least half.
+     * Blobs not in NAMES are stored whole.
+     */
+    static void pack(Map<String, String> names) {
+        pack(names, null);
+    }
+
+    /** Packs as pack(NAMES) does, but drops every blob of the old
+     *  pack that is not in LIVE, unless LIVE is null. */
+    static void pack(Map<String, String> names, Set<String> live) {
+        Pack old = current();
+        TreeSet<String> ids = new TreeSet<>(Blobs.loose());
+        if (old != null) {
+            for (String id : old.ids()) {
+                if (live == null || live.contains(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        HashMap<String, ArrayList<String>> groups = new HashMap<>();
+        HashMap<String, Long> sizes = new HashMap<>();
+        for (String id : ids) {
+            long size = Blobs.size(id);
+            if (size <= PACK_LIMIT) {
+                groups.computeIfAbsent(names.getOrDefault(id, id),
+                    k -> new ArrayList<>()).add(id);
+                sizes.put(id, size);
+            }
+        }
+
+        DIR.mkdir();
+        Trace.written();
+        Trace.written();
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        String name;
+        try {
+            Path data = Files.createTempFile(DIR.toPath(), "pack", null);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(data)))) {
+                for (ArrayList<String> group : groups.values()) {
+                    writeGroup(out, group, sizes, offsets);
+                }
+            }
+            Path index = Files.createTempFile(DIR.toPath(), "idx", null);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(index)))) {
+                out.writeInt(offsets.size());
+                for (Map.Entry<String, Long> e : offsets.entrySet()) {
+                    out.write(Utils.unhex(e.getKey()));
+                    out.writeLong(e.getValue());
+                }
+            }
+            name = "pack-" + Utils.sha1(index);
+            Files.move(data, Utils.join(DIR, name + DATA).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(index, Utils.join(DIR, name + INDEX).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write pack: %s", excp.getMessage());
+        }
+        Utils.writeAtomically(CURRENT, name);
+        synchronized (Pack.class) {
+            _opened = false;
+        }
+        for (String id : offsets.keySet()) {
+            File loose = Blobs.file(id);
+            if (loose.delete()) {
+                loose.getParentFile().delete();
+            }
+        }
+        for (String file : Utils.plainFilenamesIn(DIR)) {
+            if ((file.endsWith(DATA) || file.endsWith(INDEX))
+                && !file.startsWith(name + ".")) {
+                Utils.join(DIR, file).delete();
+            }
+        }
+    }
+
+    /** Write the versions of one file in GROUP, whose sizes are in
+     *  SIZES, to OUT, recording where each went in OFFSETS.  The
+     *  versions are read one at a time, smallest first, so that only a
+     *  version and its delta base are in memory at once.  A version
+     *  that would take the pack past MAX_SIZE is left loose. */
+    private static void writeGroup(DataOutputStream out,
+                                   ArrayList<String> group,
+                                   HashMap<String, Long> sizes,
+                                   TreeMap<String, Long> offsets)
+        throws IOException {
+        group.sort(Comparator.comparingLong(sizes::get));
+        String prev = null;
+        byte[] base = null;
+        int depth = 0;
+        for (String id : group) {
+            byte[] content = Blobs.read(id);
+            byte[] delta = null;
+            if (prev != null && depth < MAX_DEPTH) {
+                delta = Delta.create(base, content);
+                if (delta.length > content.length / 2) {
+                    delta = null;
+                }
+            }
+            byte[] packed = deflate(delta == null ? content : delta);
+            long end = (long) out.size() + 1 + CommitGraph.ID_BYTES + 8
+                + packed.length;
+            if (end > MAX_SIZE) {
+                keepLoose(id, content);
+                continue;
+            }
+            offsets.put(id, (long) out.size());
+            if (delta == null) {
+                out.writeByte(FULL);
+                out.writeInt(content.length);
+                depth = 0;
+            } else {
+                out.writeByte(DELTA);
+                out.write(Utils.unhex(prev));
+                out.writeInt(delta.length);
+                depth += 1;
+            }
+            out.writeInt(packed.length);
+            out.write(packed);
+            prev = id;
+            base = content;
+        }
+    }
+
+    /** Make sure blob ID, whose contents are CONTENT, stays stored
+     *  loose, as it may now only be in the pack being replaced. */
+    private static void keepLoose(String id, byte[] content) {
+        File loose = Blobs.file(id);
+        if (!loose.isFile()) {
+            loose.getParentFile().mkdirs();
+            Utils.writeAtomically(loose, content);
+        }
+    }
+
+    /** Return DATA compressed with zlib. */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 16];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Return PACKED decompressed, which is SIZE bytes long. */
+    private static byte[] inflate(byte[] packed, int size) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        byte[] result = new byte[size];
+        try {
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                n += inflater.inflate(result, n, size - n);
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt pack.");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** True iff _current is up to date. */
+    private static boolean _opened;
+
+    /** The current pack, or null. */
+    private static Pack _current;
+
+    /** The name of this pack. */
+    private final String _name;
+
+    /** The mapped data file. */
+    private final MappedByteBuffer _data;
+
+    /** The mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** Number of objects in this pack. */
+    private final int _count;
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Branch heads and the current branch, each kept in its own small
+ * file: .gitlet/HEAD names the current branch and .gitlet/refs/NAME
+ * holds the id of the head commit of branch NAME.  Branch names may
+ * contain '/', as the branches fetched from remotes do, in which case
+ * their files are in subdirectories of refs.  Every file is replaced
+ * atomically, so readers never see one half written.  A file ending in
+ * .tmp is a temporary file left by a write that never finished, not a
+ * branch, so no branch name may end so.
+ *
+ * @author kenny liao
+ */
+class Refs {
+
+    /** File naming the current branch. */
+    static final File HEAD = Utils.join(User.DIRECTORY, "HEAD");
+
+    /** Directory holding one file per branch. */
+    static final File REFS = Utils.join(User.DIRECTORY, "refs");
+
+    /** Return the name of the current branch. */
+    static String current() {
+        return Utils.readContentsAsString(HEAD);
+    }
+
+    /** Make BRANCH the current branch. */
+    static void setCurrent(String branch) {
+        Utils.writeAtomically(HEAD, branch);
+    }
+
+    /** Return the id of the head of BRANCH, or null if there is
+     *  no such branch. */
+    static String get(String branch) {
+        return get(User.DIRECTORY, branch);
+    }
+
+    /** Return the id of the head of BRANCH in the gitlet directory
+     *  DIR, or null if there is no such branch. */
+    static String get(File dir, String branch) {
+        File f = Utils.join(dir, REFS.getName(), branch);
+        if (!f.isFile()) {
+            return null;
+        }
+        return Utils.readContentsAsString(f);
+    }
+
+    /** Point BRANCH at the commit with id CODE. */
+    static void set(String branch, String code) {
+        set(User.DIRECTORY, branch, code);
+    }
+
+    /** Point BRANCH in the gitlet directory DIR at the commit with
+     *  id CODE. */
+    static void set(File dir, String branch, String code) {
+        File f = Utils.join(dir, REFS.getName(), branch);
+        f.getParentFile().mkdirs();
+        Utils.writeAtomically(f, code);
+    }
+
+    /** Return true iff BRANCH exists. */
+    static boolean exists(String branch) {
+        return !branch.endsWith(Utils.TEMP)
+            && Utils.join(REFS, branch).isFile();
+    }
+
+    /** Delete BRANCH. */
+    static void remove(String branch) {
+        Utils.join(REFS, branch).delete();
+    }
+
+    /** Return the names of all branches in lexicographic order. */
+    static List<String> branches() {
+        ArrayList<String> names = new ArrayList<>();
+        branches(REFS, "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Add the names of the branches in DIR to NAMES, prefixed with
+     *  PREFIX. */
+    private static void branches(File dir, String prefix,
+                                 List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                branches(f, prefix + f.getName() + "/", names);
+            } else if (!f.getName().endsWith(Utils.TEMP)) {
+                names.add(prefix + f.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Commands dealing with remote repositories: other gitlet directories
+ * on the local file system, each known by a name recorded in
+ * .gitlet/remotes.  Fetch and push only send what the receiving side
+ * lacks: the history is walked back from the branch head being sent
+ * until it reaches commits the receiver already has, and of the new
+ * commits' trees only the subtrees and blobs it does not have are
+ * copied.  Sending a branch that shares a long history with the other
+ * side therefore costs in proportion to what is new.
+ *
+ * @author kenny liao
+ */
+class Remote {
+
+    /** Directory holding one file per remote, containing the path of
+     *  its .gitlet directory. */
+    static final File REMOTES = Utils.join(User.DIRECTORY, "remotes");
+
+    /** Records remote NAME, whose .gitlet directory is DIR, written
+     *  with '/' between directories. */
+    static void add(String name, String dir) {
+        File f = Utils.join(REMOTES, name);
+        if (f.exists()) {
+            System.out.println("A remote with that name already exists.");
+            System.exit(0);
+        }
+        REMOTES.mkdir();
+        Utils.writeAtomically(f, dir.replace('/', File.separatorChar));
+    }
+
+    /** Forgets remote NAME. */
+    static void remove(String name) {
+        if (!Utils.join(REMOTES, name).delete()) {
+            System.out.println("A remote with that name does not exist.");
+            System.exit(0);
+        }
+    }
+
+    /** Copies the head of BRANCH in remote NAME, and whatever of its
+     *  history is missing here, into the branch NAME/BRANCH. */
+    static void fetch(String name, String branch) {
+        File dir = locate(name);
+        String head = Refs.get(dir, branch);
+        if (head == null) {
+            System.out.println("That remote does not have that branch.");
+            System.exit(0);
+        }
+        transfer(new Repo(dir), new Repo(User.DIRECTORY), head);
+        Refs.set(name + "/" + branch, head);
+    }
+
+    /** Copies commit HEAD, and whatever of its history is missing
+     *  there, to remote NAME, and points its BRANCH at it.  The
+     *  remote branch must be an ancestor of HEAD. */
+    static void push(String name, String branch, String head) {
+        File dir = locate(name);
+        Lock.acquire(dir);
+        String theirs = Refs.get(dir, branch);
+        Repo here = new Repo(User.DIRECTORY);
+        if (theirs != null && !here.isAncestor(theirs, head)) {
+            System.out.println("Please pull down remote changes"
+                    + " before pushing.");
+            System.exit(0);
+        }
+        transfer(here, new Repo(dir), head);
+        Refs.set(dir, branch, head);
+    }
+
+    /** Return the .gitlet directory of remote NAME. */
+    private static File locate(String name) {
+        File f = Utils.join(REMOTES, name);
+        if (!f.isFile()) {
+            System.out.println("A remote with that name does not exist.");
+            System.exit(0);
+        }
+        File dir = new File(Utils.readContentsAsString(f));
+        if (!dir.isDirectory()) {
+            System.out.println("Remote directory not found.");
+            System.exit(0);
+        }
+        return dir;
+    }
+
+    /**
+     * Copies to TO every commit reachable from HEAD in FROM that TO
+     * does not have, with the objects they need.  The walk stops at
+     * commits TO has, since it then has all their ancestors too; the
+     * new commits are written oldest generation first, so every
+     * commit's parents are in TO's commit graph before it is.
+     */
+    private static void transfer(Repo from, Repo to, String head) {
+        CommitGraph graph = from.graph();
+        ArrayList<Integer> missing = new ArrayList<>();
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(graph.position(head));
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            if (to.hasCommit(graph.id(i))) {
+                continue;
+            }
+            missing.add(i);
+            for (int p : graph.parents(i)) {
+                if (p != CommitGraph.NONE && seen.add(p)) {
+                    queue.add(p);
+                }
+            }
+        }
+        missing.sort(Comparator.comparingInt(graph::generation));
+        for (int i : missing) {
+            String code = graph.id(i);
+            byte[] encoding = from.commit(code);
+            Commit c = Commit.parse(code, encoding);
+            copyTree(from, to, c.getTree());
+            to.putCommit(c, encoding);
+        }
+    }
+
+    /** Copies tree ID from FROM to TO with every subtree and blob in
+     *  it that TO lacks.  A tree is copied after its contents, so a
+     *  tree TO has is known to be complete and is skipped whole. */
+    private static void copyTree(Repo from, Repo to, String id) {
+        if (to.hasObject(id)) {
+            return;
+        }
+        byte[] tree = from.object(id);
+        for (Map.Entry<String, String[]> e : Tree.parse(tree).entrySet()) {
+            String[] entry = e.getValue();
+            if (entry[0].equals(Tree.TREE)) {
+                copyTree(from, to, entry[1]);
+            } else if (!to.hasObject(entry[1])) {
+                to.copyObject(from, entry[1]);
+            }
+        }
+        to.putObject(id, tree);
+    }
+
+    /** A gitlet repository, here or remote, read and written directly
+     *  through its files. */
+    private static class Repo {
+
+        /** The repository in the .gitlet directory DIR. */
+        Repo(File dir) {
+            _dir = dir;
+            _objects = Utils.join(dir, Blobs.OBJECTS.getName());
+            _commits = Utils.join(dir, Commit.COMMITS.getName());
+        }
+
+        /** Return this repository's commit graph. */
+        CommitGraph graph() {
+            if (_graph == null) {
+                _graph = CommitGraph.load(
+                    Utils.join(_dir, CommitGraph.GRAPH.getName()));
+            }
+            return _graph;
+        }
+
+        /** Return true iff commit ANCESTOR is DESCENDANT or one of its
+         *  ancestors.  Only commits of at least ANCESTOR's generation
+         *  are visited. */
+        boolean isAncestor(String ancestor, String descendant) {
+            CommitGraph graph = graph();
+            int target = graph.position(ancestor);
+            if (target == CommitGraph.NONE) {
+                return false;
+            }
+            int generation = graph.generation(target);
+            HashSet<Integer> seen = new HashSet<>();
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(graph.position(descendant));
+            while (!queue.isEmpty()) {
+                int i = queue.poll();
+                if (i == target) {
+                    return true;
+                }
+                for (int p : graph.parents(i)) {
+                    if (p != CommitGraph.NONE
+                            && graph.generation(p) >= generation
+                            && seen.add(p)) {
+                        queue.add(p);
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** Return true iff this repository has commit CODE. */
+        boolean hasCommit(String code) {
+            return Utils.join(_commits, code).isFile();
+        }
+
+        /** Return the encoding of commit CODE. */
+        byte[] commit(String code) {
+            return Utils.readContents(Utils.join(_commits, code));
+        }
+
+        /** Adds commit C, whose encoding is ENCODING, to this
+         *  repository's commits, commit index and commit graph. */
+        void putCommit(Commit c, byte[] encoding) {
+            Utils.writeAtomically(Utils.join(_commits, c.getCode()),
+                encoding);
+            CommitIndex.append(
+                Utils.join(_dir, CommitIndex.INDEX.getName()), c);
+            CommitGraph.append(
+                Utils.join(_dir, CommitGraph.GRAPH.getName()), c);
+        }
+
+        /** Return the pack of this repository, or null. */
+        private Pack pack() {
+            if (!_packOpened) {
+                _packOpened = true;
+                _pack = Pack.open(
+                    Utils.join(_objects, Pack.DIR.getName()));
+            }
+            return _pack;
+        }
+
+        /** Return true iff this repository has object ID. */
+        boolean hasObject(String id) {
+            return Blobs.file(_objects, id).isFile()
+                || pack() != null && pack().contains(id);
+        }
+
+        /** Return the contents of object ID. */
+        byte[] object(String id) {
+            File loose = Blobs.file(_objects, id);
+            if (loose.isFile()) {
+                return Utils.readContents(loose);
+            }
+            byte[] contents = pack() == null ? null : pack().read(id);
+            if (contents == null) {
+                throw Utils.error("Missing object %s in %s.", id, _dir);
+            }
+            return contents;
+        }
+
+        /** Stores CONTENTS as object ID. */
+        void putObject(String id, byte[] contents) {
+            File f = Blobs.file(_objects, id);
+            f.getParentFile().mkdirs();
+            Utils.writeAtomically(f, contents);
+        }
+
+        /** Copies object ID from FROM, straight from file to file if
+         *  it is loose there. */
+        void copyObject(Repo from, String id) {
+            File loose = Blobs.file(from._objects, id);
+            if (!loose.isFile()) {
+                putObject(id, from.object(id));
+                return;
+            }
+            File f = Blobs.file(_objects, id);
+            f.getParentFile().mkdirs();
+            Trace.read();
+            Trace.written();
+            try {
+                Path temp = Files.createTempFile(
+                    Utils.tempDir(f).toPath(), "blob", Utils.TEMP);
+                Files.copy(loose.toPath(), temp,
+                    StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, f.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot copy %s: %s", id,
+                        excp.getMessage());
+            }
+        }
+
+        /** The .gitlet directory. */
+        private final File _dir;
+
+        /** Its object directory. */
+        private final File _objects;
+
+        /** Its commit directory. */
+        private final File _commits;
+
+        /** Its commit graph, once read. */
+        private CommitGraph _graph;
+
+        /** True once _pack has been looked for. */
+        private boolean _packOpened;
+
+        /** Its pack, or null. */
+        private Pack _pack;
+    }
+}
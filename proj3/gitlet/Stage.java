@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * The staging area, kept in .gitlet/index so that commands which do
+ * not stage anything never read it.  Like git's index it also caches
+ * the size, modification time and blob id of every working file it
+ * has hashed, so a file whose size and time are unchanged is never
+ * read again.
+ *
+ * @author kenny liao
+ */
+class Stage implements Serializable {
+
+    /** File holding the staging area. */
+    static final File INDEX = Utils.join(User.DIRECTORY, "index");
+
+    /** Files modified less than this many milliseconds ago are not
+     *  cached, since they could change again without their time
+     *  changing. */
+    static final long RACY = 2000;
+
+    /** Return the staging area read from INDEX. */
+    static Stage load() {
+        if (!INDEX.isFile()) {
+            return new Stage();
+        }
+        return Utils.readObject(INDEX, Stage.class);
+    }
+
+    /** Writes this staging area to INDEX, replacing it atomically. */
+    void save() {
+        Utils.writeAtomically(INDEX, Utils.serialize(this));
+    }
+
+    /** Return file name : blob id of the files staged for addition. */
+    TreeMap<String, String> staged() {
+        return _staged;
+    }
+
+    /** Return names of the files staged for removal. */
+    ArrayList<String> removal() {
+        return _removal;
+    }
+
+    /** Return the blob id of the current contents of FILE, hashing
+     *  it only if its size or modification time changed since it was
+     *  last hashed. */
+    String hash(File file) {
+        return Utils.hex(digest(file));
+    }
+
+    /** Return true iff FILE currently has blob id ID, as hash(FILE)
+     *  would say, but comparing the raw digest with ID instead of
+     *  making a hexadecimal numeral for every file checked. */
+    boolean holds(File file, String id) {
+        return Utils.sameHash(digest(file), id);
+    }
+
+    /** Return the raw blob id of the current contents of FILE, hashing
+     *  it only if its size or modification time changed since it was
+     *  last hashed.  The result must not be modified. */
+    private byte[] digest(File file) {
+        byte[] digest = cachedDigest(file);
+        if (digest == null) {
+            digest = Blobs.digest(file);
+            record(file, digest);
+        }
+        return digest;
+    }
+
+    /** Return the cached blob id of FILE, or null if FILE may have
+     *  changed since it was last hashed. */
+    String cached(File file) {
+        byte[] digest = cachedDigest(file);
+        return digest == null ? null : Utils.hex(digest);
+    }
+
+    /** Return the cached raw blob id of FILE, or null if FILE may
+     *  have changed since it was last hashed. */
+    private byte[] cachedDigest(File file) {
+        Stat old = _stats.get(Utils.path(file));
+        if (old != null && old.matches(file)) {
+            return old.digest;
+        }
+        return null;
+    }
+
+    /** Record that FILE currently has blob id ID. */
+    void record(File file, String id) {
+        record(file, Utils.unhex(id));
+    }
+
+    /** Record that FILE currently has the raw blob id DIGEST. */
+    private void record(File file, byte[] digest) {
+        Stat now = new Stat(file, digest);
+        if (now.mtime < System.currentTimeMillis() - RACY) {
+            _stats.put(Utils.path(file), now);
+        } else {
+            _stats.remove(Utils.path(file));
+        }
+    }
+
+    /** Forget the cached ids of all files except those in NAMES. */
+    void retain(Collection<String> names) {
+        _stats.keySet().retainAll(names);
+    }
+
+    /** Unstages everything. */
+    void clear() {
+        _staged.clear();
+        _removal.clear();
+    }
+
+    /** Stores file name : blob id of all the staged files. */
+    private TreeMap<String, String> _staged = new TreeMap<>();
+
+    /** Names of files staged for removal. */
+    private ArrayList<String> _removal = new ArrayList<>();
+
+    /** Maps file name : what it looked like when last hashed. */
+    private HashMap<String, Stat> _stats = new HashMap<>();
+
+    /** The size, modification time and blob id of a file. */
+    private static class Stat implements Serializable {
+
+        /** The stat data of FILE, whose raw blob id is DIGEST.  A
+         *  missing FILE has size -1. */
+        Stat(File file, byte[] digest) {
+            this.digest = digest;
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        file.toPath(), BasicFileAttributes.class);
+                size = attrs.size();
+                mtime = attrs.lastModifiedTime().toMillis();
+            } catch (IOException excp) {
+                size = -1;
+            }
+        }
+
+        /** Return true iff FILE has my size and modification time. */
+        boolean matches(File file) {
+            Stat other = new Stat(file, null);
+            return size >= 0 && size == other.size && mtime == other.mtime;
+        }
+
+        /** Size in bytes. */
+        private long size;
+
+        /** Modification time in milliseconds. */
+        private long mtime;
+
+        /** Raw blob id. */
+        private byte[] digest;
+    }
+}
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in accounting of what a command costs.  When the environment
+ * variable GITLET_TRACE is set, the report is made when the command
+ * ends, however it ends: its wall time, the files it read and wrote,
+ * the bytes it hashed, the objects it decoded (commits, trees, packed
+ * blobs and serialized state) and the peak size of the heap.  If
+ * GITLET_TRACE is "1" the report is one line on the standard error;
+ * otherwise it names a file to which the report is appended as a line
+ * of JSON.  The counters are always kept, since they cost an
+ * increment each; they are LongAdders because add hashes and stores
+ * files from several threads at once.
+ *
+ * @author kenny liao
+ */
+class Trace {
+
+    /** Environment variable enabling the trace. */
+    static final String VARIABLE = "GITLET_TRACE";
+
+    /** Starts tracing the command ARGS if VARIABLE is set. */
+    static void start(String... args) {
+        String target = System.getenv(VARIABLE);
+        if (target == null || target.isEmpty()) {
+            return;
+        }
+        _start = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(() -> report(args, target)));
+    }
+
+    /** Counts a file read. */
+    static void read() {
+        READ.increment();
+    }
+
+    /** Counts a file written. */
+    static void written() {
+        WRITTEN.increment();
+    }
+
+    /** Counts N bytes hashed. */
+    static void hashed(long n) {
+        HASHED.add(n);
+    }
+
+    /** Counts an object decoded. */
+    static void decoded() {
+        DECODED.increment();
+    }
+
+    /** Reports the command ARGS to TARGET. */
+    private static void report(String[] args, String target) {
+        double wall = (System.nanoTime() - _start) / 1e6;
+        long heap = peakHeap();
+        String command = args.length == 0 ? "" : args[0];
+        if (target.equals("1")) {
+            System.err.printf(Locale.ROOT, "gitlet %s: %.3f ms, %d files"
+                + " read, %d written, %d bytes hashed, %d objects decoded,"
+                + " %d bytes peak heap%n", command, wall, READ.sum(),
+                WRITTEN.sum(), HASHED.sum(), DECODED.sum(), heap);
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"command\":");
+        quote(json, command);
+        json.append(",\"args\":[");
+        for (int i = 1; i < args.length; i += 1) {
+            if (i > 1) {
+                json.append(',');
+            }
+            quote(json, args[i]);
+        }
+        json.append(String.format(Locale.ROOT,
+            "],\"wall_ms\":%.3f,\"files_read\":%d,"
+            + "\"files_written\":%d,\"bytes_hashed\":%d,"
+            + "\"objects_decoded\":%d,\"peak_heap_bytes\":%d}%n",
+            wall, READ.sum(), WRITTEN.sum(), HASHED.sum(), DECODED.sum(),
+            heap));
+        try {
+            Files.write(new File(target).toPath(),
+                json.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            System.err.printf("Cannot write %s: %s%n", target,
+                excp.getMessage());
+        }
+    }
+
+    /** Return the sum of the peak sizes of the heap's memory pools. */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /** Appends S to JSON as a JSON string. */
+    private static void quote(StringBuilder json, String s) {
+        json.append('"');
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /** When the command started. */
+    private static long _start;
+
+    /** Files read so far. */
+    private static final LongAdder READ = new LongAdder();
+
+    /** Files written so far. */
+    private static final LongAdder WRITTEN = new LongAdder();
+
+    /** Bytes hashed so far. */
+    private static final LongAdder HASHED = new LongAdder();
+
+    /** Objects decoded so far. */
+    private static final LongAdder DECODED = new LongAdder();
+}
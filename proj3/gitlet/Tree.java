@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Tree objects: the files tracked by a commit, one tree per
+ * directory.  A tree is a sorted list of "blob id name" and
+ * "tree id name" lines, stored in the object store under the SHA-1 of
+ * that list.  A directory whose contents did not change therefore has
+ * the same id in every commit, is stored once, and two trees can be
+ * compared without reading any subtree whose id is the same in both.
+ * File names are paths relative to the working directory, with '/'
+ * between directories.
+ *
+ * @author kenny liao
+ */
+class Tree {
+
+    /** Kind of an entry naming a file. */
+    static final String BLOB = "blob";
+
+    /** Kind of an entry naming a subdirectory. */
+    static final String TREE = "tree";
+
+    /** Receives the differences found by diff. */
+    interface Visitor {
+        /** Called for file PATH, whose blob id was BEFORE and is now
+         *  AFTER; either is null if the file is absent. */
+        void changed(String path, String before, String after);
+    }
+
+    /**
+     * Return the id of the root tree of FILES, which maps path : blob
+     * id, and put the encoding of it and every subtree into OBJECTS by
+     * id.  Nothing is stored.
+     */
+    static String build(Map<String, String> files,
+                        Map<String, byte[]> objects) {
+        TreeMap<String, Object> root = new TreeMap<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            TreeMap<String, Object> dir = root;
+            String[] parts = e.getKey().split("/");
+            for (int i = 0; i < parts.length - 1; i += 1) {
+                Object sub = dir.computeIfAbsent(parts[i],
+                    k -> new TreeMap<String, Object>());
+                if (!(sub instanceof TreeMap)) {
+                    throw Utils.error("%s is both a file and a directory.",
+                            parts[i]);
+                }
+                dir = cast(sub);
+            }
+            dir.put(parts[parts.length - 1], e.getValue());
+        }
+        return encode(root, objects);
+    }
+
+    /** Return the id of the tree DIR, a map of name : blob id or
+     *  subdirectory, putting it and its subtrees into OBJECTS. */
+    private static String encode(TreeMap<String, Object> dir,
+                                 Map<String, byte[]> objects) {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, Object> e : dir.entrySet()) {
+            if (e.getValue() instanceof String) {
+                s.append(BLOB).append(' ').append(e.getValue());
+            } else {
+                s.append(TREE).append(' ')
+                    .append(encode(cast(e.getValue()), objects));
+            }
+            s.append(' ').append(e.getKey()).append('\n');
+        }
+        byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(bytes);
+        objects.put(id, bytes);
+        return id;
+    }
+
+    /** Return O as a directory. */
+    @SuppressWarnings("unchecked")
+    private static TreeMap<String, Object> cast(Object o) {
+        return (TreeMap<String, Object>) o;
+    }
+
+    /** Store every tree in OBJECTS, which maps id : encoding, unless
+     *  it is stored already. */
+    static void write(Map<String, byte[]> objects) {
+        for (Map.Entry<String, byte[]> e : objects.entrySet()) {
+            if (!Blobs.contains(e.getKey())) {
+                Blobs.store(e.getValue());
+            }
+        }
+    }
+
+    /** Return the entries of tree ID as name : {kind, id}. */
+    static TreeMap<String, String[]> entries(String id) {
+        return parse(Blobs.read(id));
+    }
+
+    /** Return the entries of the tree whose encoding is BYTES, as
+     *  name : {kind, id}. */
+    static TreeMap<String, String[]> parse(byte[] bytes) {
+        Trace.decoded();
+        TreeMap<String, String[]> entries = new TreeMap<>();
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        for (String line : s.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int first = line.indexOf(' ');
+            int second = line.indexOf(' ', first + 1);
+            entries.put(line.substring(second + 1), new String[] {
+                line.substring(0, first), line.substring(first + 1, second)
+            });
+        }
+        return entries;
+    }
+
+    /** Return every file under tree ID as path : blob id. */
+    static TreeMap<String, String> files(String id) {
+        TreeMap<String, String> files = new TreeMap<>();
+        files(id, "", files);
+        return files;
+    }
+
+    /** Add every file under tree ID to FILES, prefixing its path
+     *  with PREFIX. */
+    private static void files(String id, String prefix,
+                              TreeMap<String, String> files) {
+        for (Map.Entry<String, String[]> e : entries(id).entrySet()) {
+            String[] entry = e.getValue();
+            if (entry[0].equals(TREE)) {
+                files(entry[1], prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), entry[1]);
+            }
+        }
+    }
+
+    /**
+     * Report to VISITOR every file whose blob id differs between trees
+     * BEFORE and AFTER, either of which may be null for an empty tree.
+     * Subtrees with the same id in both are skipped without being
+     * read.  Whatever is removed from a path is reported before
+     * whatever replaces it.
+     */
+    static void diff(String before, String after, Visitor visitor) {
+        diff(before, after, "", visitor);
+    }
+
+    /** Diff trees BEFORE and AFTER, under directory PREFIX, reporting
+     *  to VISITOR. */
+    private static void diff(String before, String after, String prefix,
+                             Visitor visitor) {
+        if (before != null && before.equals(after)) {
+            return;
+        }
+        TreeMap<String, String[]> a = before == null
+            ? new TreeMap<>() : entries(before);
+        TreeMap<String, String[]> b = after == null
+            ? new TreeMap<>() : entries(after);
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String[] x = a.get(name);
+            String[] y = b.get(name);
+            String path = prefix + name;
+            if (x != null && y != null && x[1].equals(y[1])) {
+                continue;
+            }
+            String xBlob = blob(x);
+            String yBlob = blob(y);
+            String xTree = subtree(x);
+            String yTree = subtree(y);
+            if (xTree != null) {
+                diff(xTree, yTree, path + "/", visitor);
+            }
+            if (xBlob != null || yBlob != null) {
+                visitor.changed(path, xBlob, yBlob);
+            }
+            if (xTree == null && yTree != null) {
+                diff(null, yTree, path + "/", visitor);
+            }
+        }
+    }
+
+    /** Return the blob id of ENTRY, or null if it is absent or a
+     *  subtree. */
+    private static String blob(String[] entry) {
+        return entry != null && entry[0].equals(BLOB) ? entry[1] : null;
+    }
+
+    /** Return the tree id of ENTRY, or null if it is absent or a
+     *  blob. */
+    private static String subtree(String[] entry) {
+        return entry != null && entry[0].equals(TREE) ? entry[1] : null;
+    }
+}
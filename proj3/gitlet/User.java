@@ -1,22 +1,35 @@
 package gitlet;
 
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /**
  * This class stores permanent information for 'user'
  * and supports finding, managing, reading all hash.
+ * Nothing is read from .gitlet until a command needs it:
+ * the current branch is read up front, the head commit, the
+ * staging area and the commit index only on first use.
  *
  * @author kenny liao
  */
 
-public class User implements Serializable {
+public class User {
 
     /**
      * File in which the .gitlet directory exists.
@@ -24,158 +37,158 @@ public class User implements Serializable {
     static final File DIRECTORY = new File(".gitlet");
 
     /**
-     * Dir Staging.
+     * Marks a commit reached from the head in getSplit.
      */
-    static final File STAGING = new File(".gitlet/stage");
+    private static final int FROM_HEAD = 1;
 
     /**
-     * File for permanent storage.
+     * Marks a commit reached from the other branch in getSplit.
      */
-    static final File USER = new File(".gitlet/USER");
+    private static final int FROM_OTHER = 2;
 
     /**
-     * First commit's doubleHT.
+     * Creates a unique user for gitlet.
      */
-    private DoubleHT initial;
+    public User() {
+        DIRECTORY.mkdir();
+        Blobs.OBJECTS.mkdir();
+        Commit.COMMITS.mkdir();
+        Refs.REFS.mkdir();
+
+        Commit first = new Commit("initial commit", null,
+                Collections.emptyList(), null, null);
+        first.save();
+        CommitIndex.append(first);
+        CommitGraph.append(first);
+        _current = "master";
+        Refs.set(_current, first.getCode());
+        Refs.setCurrent(_current);
+        head = first;
+        _stage = new Stage();
+    }
 
     /**
-     * For convienence.
+     * Creates the user of an existing gitlet on branch CURRENT.
      */
-    static final int GITLET = 9;
+    private User(String current) {
+        _current = current;
+    }
 
     /**
-     * For convienence.
+     * Return the user of the gitlet in the current directory.
      */
+    static User load() {
+        return new User(Refs.current());
+    }
 
-    static final int ABBREV = 6;
+    /**
+     * Return the head commit.
+     */
+    private Commit head() {
+        if (head == null) {
+            head = Commit.load(Refs.get(_current));
+        }
+        return head;
+    }
 
     /**
-     * Creates a unique user for gitlet.
+     * Return the staging area.
      */
-    public User() {
-        staged = new ArrayList<File>();
-        DIRECTORY.mkdir();
-        STAGING.mkdir();
-        try {
-            USER.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        total = new ArrayList<Commit>();
-        real = new HashMap<>();
-        untracked = new ArrayList<>();
-        modified = new ArrayList<>();
-        deleted = new ArrayList<>();
-        removal = new ArrayList<>();
-        branches = new ArrayList<>();
-
-        Commit first = new Commit("initial commit", null, initParent(), null);
-        total.add(first);
-        branches.add("master");
-        initial = new DoubleHT(null, first, "master");
-        first.setFather(initial);
-        head = initial;
-        _current = "master";
-        _branchHeads = new HashMap<String, DoubleHT>();
-        _branchHeads.put("master", initial);
-        dp = false;
+    private Stage stage() {
+        if (_stage == null) {
+            _stage = Stage.load();
+        }
+        return _stage;
+    }
 
-        publish(first, first.getCode());
+    /**
+     * Return file name : blob id of all the staged files.
+     */
+    private TreeMap<String, String> staged() {
+        return stage().staged();
+    }
+
+    /**
+     * Return names of all the files staged for removal.
+     */
+    private ArrayList<String> removal() {
+        return stage().removal();
     }
 
     /**
-     * Return all existing files when initializing to the first commit.
+     * Return the commit graph.
      */
-    private ArrayList<File> initParent() {
-        File[] temp = DIRECTORY.listFiles();
-        ArrayList<File> ret = new ArrayList<>();
-        if (temp != null) {
-            Collections.addAll(ret, temp);
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.load();
         }
-        return ret;
+        return _graph;
     }
 
     /**
-     * File writing of Commit C with CODE as name.
+     * Return the index of all commits.
      */
-    private void publish(Commit c, String code) {
-        ArrayList<File> buffer = new ArrayList<>();
-        File store = new File(".gitlet/" + code);
-        store.mkdir();
-        for (File f : c.getTracked()) {
-            File temp = new File(".gitlet/" + code + "/" + f.getName());
-            try {
-                temp.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            try {
-                Utils.writeContents(temp, Utils.readContentsAsString(f));
-            } catch (IllegalArgumentException ignored) {
-                int a = 3;
-            }
-            buffer.add(temp);
+    private CommitIndex commits() {
+        if (_commits == null) {
+            _commits = CommitIndex.load();
         }
-        c.changeTracked(buffer);
+        return _commits;
     }
 
     /**
      * Adds file with name FILE to the staging area.
-     * Overwrites same file if exists.
+     * Overwrites same file if exists.  Only the blob id is
+     * staged; the contents go to the blob store right away,
+     * unless the stat cache shows they are stored already.
      */
     public void add(File file) {
-        String buffer = Utils.sha1(file.getName());
-        String name = ".gitlet/stage/" + buffer;
-        File f = new File(name);
-        delete(name);
-        staged.remove(file);
-        real.remove(buffer);
-        Commit c = head.getCommit();
-        if (file.exists() && c.getFile(file.getName()) != null
-                && compare(file, c.getFile(file.getName()))) {
-            removal.remove(file.getName());
-            return;
-        }
-        try {
-            f.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        add(Collections.singletonList(file));
+    }
+
+    /**
+     * Adds all of FILES to the staging area.  Their blobs are hashed
+     * and stored in parallel; the staging area is then updated in
+     * one batch, in the order FILES are given.
+     */
+    public void add(List<File> files) {
+        Stage stage = stage();
+        Commit c = head();
+        String[] ids = new String[files.size()];
+        IntStream.range(0, ids.length).parallel()
+            .forEach(i -> ids[i] = store(stage, files.get(i)));
+        for (int i = 0; i < ids.length; i += 1) {
+            File file = files.get(i);
+            String name = Utils.path(file);
+            stage.record(file, ids[i]);
+            staged().remove(name);
+            removal().remove(name);
+            if (!ids[i].equals(c.getBlob(name))) {
+                staged().put(name, ids[i]);
+                untracked.remove(name);
+            }
         }
-        Utils.writeContents(f, Utils.readContentsAsString(file));
-
-        real.putIfAbsent(buffer, file.getName());
-        staged.add(file);
-        untracked.remove(file);
     }
 
     /**
-     * Actual removal of file in directory based on NAME passed in.
+     * Return the blob id of FILE, storing it unless STAGE's stat
+     * cache shows it is stored already.  Only reads STAGE, so it
+     * may run on many files at once.
      */
-    private void delete(String name) {
-        File temp = new File(name);
-        if (temp.exists()) {
-            temp.delete();
+    private static String store(Stage stage, File file) {
+        String id = stage.cached(file);
+        if (id == null || !Blobs.contains(id)) {
+            id = Blobs.store(file);
         }
+        return id;
     }
 
     /**
-     * Return the Delete file if B has the same name with A.
+     * Return the tracked files of head with those in REMOVED dropped.
      */
-    private ArrayList<File> delSimilar(ArrayList<File> a, ArrayList<String> b) {
-        ArrayList<File> ret = new ArrayList<>();
-        for (File f1 : a) {
-            boolean flag = true;
-            for (String s : b) {
-                if (f1.getName().equals(s)) {
-                    flag = false;
-                    break;
-                }
-            }
-            if (flag) {
-                ret.add(f1);
-            }
-        }
+    private TreeMap<String, String> delSimilar(ArrayList<String> removed) {
+        TreeMap<String, String> ret =
+                new TreeMap<>(head().getTracked());
+        ret.keySet().removeAll(removed);
         return ret;
     }
 
@@ -183,7 +196,7 @@ public class User implements Serializable {
      * Makes a commit with MESSAGE.
      */
     public void commit(String message) {
-        if (staged.size() == 0 && removal.size() == 0) {
+        if (staged().size() == 0 && removal().size() == 0) {
             System.out.println("No changes added to the commit.");
             return;
         }
@@ -191,42 +204,37 @@ public class User implements Serializable {
             System.out.println("Please enter a commit message.");
             return;
         }
-        ArrayList<File> pass =
-                delSimilar(head.getCommit().getTracked(), removal);
-        Commit c = new Commit(message, time(),
-                pass, staged);
-        c.setReal(real);
-        c.setReal(head.getCommit().getReal());
-
-        total.add(c);
-        DoubleHT d = new DoubleHT(head, c, _current);
-        c.setFather(d);
-        _branchHeads.remove(_current);
-        _branchHeads.put(_current, d);
-        head = d;
-
-        publish(c, c.getCode());
-        staged.clear();
-        removal.clear();
-        real.clear();
-        for (File file : STAGING.listFiles()) {
-            if (!file.isDirectory()) {
-                file.delete();
-            }
-        }
+        makeCommit(message, Collections.singletonList(head()));
+    }
+
+    /**
+     * Commits the staged files and removals with MESSAGE and
+     * PARENTS, without checking that there is anything to commit.
+     * Since blobs are stored at add time, this costs nothing per
+     * unchanged file.
+     */
+    private void makeCommit(String message, List<Commit> parents) {
+        Commit c = new Commit(message, time(), parents,
+                delSimilar(removal()), staged());
+        c.save();
+        CommitIndex.append(c);
+        CommitGraph.append(c);
+        Refs.set(_current, c.getCode());
+        head = c;
+
+        stage().clear();
     }
 
     /**
      * Removes file TEMP.
      */
     public void rm(File temp) {
-        String stage = ".gitlet/stage/" + Utils.sha1(temp.getName());
-        boolean removed = staged.remove(temp);
-        delete(stage);
-        if (!removal.contains(temp) && head.getCommit().tracking(temp)) {
+        String name = Utils.path(temp);
+        boolean removed = staged().remove(name) != null;
+        if (!removal().contains(name) && head().trackingR(name)) {
             removed = true;
-            removal.add(temp.getName());
-            temp.delete();
+            removal().add(name);
+            delete(name);
         } else if (!removed) {
             System.out.println("No reason to remove the file.");
             System.exit(0);
@@ -235,25 +243,24 @@ public class User implements Serializable {
 
     /**
      * Corresponds to reset command
-     * and checks out all with CODE.
+     * and checks out all with CODE.  With no such commit, any
+     * untracked file is reported first.
      */
     public void reset(String code) {
-        staged.clear();
-        Commit target = null;
-        for (Commit c : total) {
-            if (c.getCode().equals(code)) {
-                target = c;
-                break;
-            }
-        }
+        String target = commits().find(code);
         if (target == null) {
+            if (warning()) {
+                inTheWay();
+            }
             System.out.println("No commit with that id exists.");
             System.exit(0);
         } else {
-            head = target.getFather();
-            _branchHeads.remove(_current);
-            _branchHeads.put(_current, head);
-            checkAll();
+            Commit from = head();
+            inTheWay(Commit.load(target));
+            stage().clear();
+            Refs.set(_current, target);
+            head = Commit.load(target);
+            checkAll(from);
         }
     }
 
@@ -268,17 +275,13 @@ public class User implements Serializable {
      * Adds a pointer of name NAME to tip of the branch.
      */
     public void addBranch(String name) {
-        if (_branchHeads.containsKey(name)) {
+        if (Refs.exists(name)) {
             System.out.println("A branch with that name already exists.");
+        } else if (name.endsWith(Utils.TEMP)) {
+            System.out.println("A branch name cannot end in " + Utils.TEMP
+                               + ".");
         } else {
-            DoubleHT temp = _branchHeads.get(_current);
-            if (temp.b2() == null) {
-                temp.addBranch(name);
-                _branchHeads.put(name, temp);
-                branches.add(name);
-            } else {
-                System.out.println("Only two branch");
-            }
+            Refs.set(name, Refs.get(_current));
         }
     }
 
@@ -288,32 +291,55 @@ public class User implements Serializable {
     public void rmBranch(String name) {
         if (name.equals(_current)) {
             System.out.println("Cannot remove the current branch.");
-        } else if (!_branchHeads.containsKey(name)) {
+        } else if (!Refs.exists(name)) {
             System.out.println("branch with that name does not exist.");
         } else {
-            branches.remove(name);
-            _branchHeads.remove(name);
-            head.rmbranch(name);
+            Refs.remove(name);
         }
     }
 
     /**
-     * Saves this User.
+     * Saves the parts of this User that were read, since only
+     * those can have changed.
      */
     public void save() {
-        Utils.writeObject(USER, this);
+        if (_stage != null) {
+            _stage.save();
+        }
     }
 
     /**
-     * Responds to the command with message M.
+     * Packs all blobs, delta-encoding the versions of each file
+     * named in some commit or in the staging area against each other.
      */
-    public void find(String m) {
-        ArrayList<String> ans = new ArrayList<>();
-        for (Commit c : total) {
-            if (c.getMessage().equals(m)) {
-                ans.add(c.getCode());
+    public void pack() {
+        HashMap<String, String> names = new HashMap<>();
+        CommitGraph graph = graph();
+        for (int i = 0; i < graph.size(); i += 1) {
+            Commit c = Commit.load(graph.id(i));
+            for (Map.Entry<String, String> e : c.getTracked().entrySet()) {
+                names.putIfAbsent(e.getValue(), e.getKey());
             }
         }
+        for (Map.Entry<String, String> e : staged().entrySet()) {
+            names.putIfAbsent(e.getValue(), e.getKey());
+        }
+        Pack.pack(names);
+    }
+
+    /**
+     * Deletes the commits no branch reaches, and the trees and blobs
+     * only they used, keeping whatever is staged.
+     */
+    public void gc() {
+        Gc.collect(staged());
+    }
+
+    /**
+     * Responds to the command with message M.
+     */
+    public void find(String m) {
+        List<String> ans = commits().withMessage(m);
         if (ans.size() == 0) {
             System.out.println("Found no commit with that message.");
         } else {
@@ -328,17 +354,30 @@ public class User implements Serializable {
      * In chronological order.
      */
     public void log() {
-        DoubleHT temp = _branchHeads.get(_current);
-        temp.printlog(_current);
+        CommitGraph graph = graph();
+        int i = graph.position(Refs.get(_current));
+        for (; i != CommitGraph.NONE; i = graph.parent(i)) {
+            print(i);
+        }
+    }
+
+    /**
+     * Prints the log entry of the commit at position I in the graph,
+     * without reading the commit itself.
+     */
+    private void print(int i) {
+        String code = graph().id(i);
+        System.out.println(String.format("===\ncommit %s\nDate: %s\n%s\n",
+                code, Commit.time(graph().time(i)),
+                commits().message(code)));
     }
 
     /**
      * Prints out all commits since the first first one.
      */
     public void global() {
-        for (Commit c : total) {
-            System.out.println(String.format("===\ncommit %s\nDate: %s\n%s\n",
-                    c.getCode(), c.time(), c.getMessage()));
+        for (int i = 0; i < graph().size(); i += 1) {
+            print(i);
         }
     }
 
@@ -346,72 +385,79 @@ public class User implements Serializable {
      * Switches Branch from to ARG and updating _current.
      */
     public void switchBranch(String arg) {
-        if (!_branchHeads.containsKey(arg)) {
+        if (!Refs.exists(arg)) {
             System.out.println("No such branch exists.");
             System.exit(0);
         } else if (arg.equals(_current)) {
             System.out.println("No need to checkout the current branch.");
             System.exit(0);
         } else {
+            Commit from = head();
+            inTheWay(Commit.load(Refs.get(arg)));
             _current = arg;
-            head = _branchHeads.get(_current);
+            Refs.setCurrent(_current);
+            stage().clear();
+            head = null;
+            checkAll(from);
         }
     }
 
     /**
      * Returns the HEAD.
      */
-    public DoubleHT getH() {
-        return head;
+    public Commit getH() {
+        return head();
     }
 
     /**
-     * Checks out all files in a commit.
+     * Checks out all files in the head commit, coming from commit
+     * FROM.  Files FROM tracks and the head does not are deleted.
+     * Every file the head tracks is written unless the working file
+     * already has its contents, which is decided by the stat cache,
+     * so unchanged files are neither read nor written.
      */
-    public void checkAll() {
-        Commit c = head.getCommit();
-        File here = new File(System.getProperty("user.dir"));
-        for (File f : here.listFiles()) {
-            f.delete();
-        }
-        for (File f : c.getTracked()) {
-            if (f.getName().contains(".txt")) {
-                checkout(head.getCommit().getCode(), new File(f.getName()));
+    private void checkAll(Commit from) {
+        Tree.diff(from.getTree(), head().getTree(), (name, before, after) -> {
+            if (after == null) {
+                delete(name);
+            }
+        });
+        for (Map.Entry<String, String> e : head().getTracked().entrySet()) {
+            File file = new File(e.getKey());
+            if (!file.isFile() || !compare(file, e.getValue())) {
+                Blobs.restore(e.getValue(), file);
             }
         }
     }
 
     /**
-     * Switches to commit with CODE, and checkout file with name FILE.
+     * Deletes the working file NAME, and any directories that leaves
+     * empty.
      */
-    public void checkout(String code, File file) {
-        Commit c = null;
-        for (Commit c2 : total) {
-            if (c2.getCode().substring(0,
-                    ABBREV).equals(code.substring(0, ABBREV))) {
-                c = c2;
-                break;
-            }
+    private static void delete(String name) {
+        File file = new File(name);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
         }
+    }
+
+    /**
+     * Switches to commit with CODE, which may be any unique prefix
+     * of a commit id, and checkout file with name FILE.
+     */
+    public void checkout(String code, File file) {
+        String full = commits().find(code);
+        Commit c = full == null ? null : Commit.load(full);
         if (c == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
-        } else if (file.getName().contains("warg")
-                || !c.trackingR(file.getName())) {
+        } else if (!c.trackingR(Utils.path(file))) {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
         } else {
-            String s = ".gitlet/" + c.getCode() + "/" + file.getName();
-            File f = new File(s);
-            if (file.exists()) {
-                file.delete();
-            }
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            Utils.writeContents(file, Utils.readContentsAsString(f));
+            Blobs.restore(c.getBlob(Utils.path(file)), file);
         }
     }
 
@@ -419,13 +465,13 @@ public class User implements Serializable {
      * Show the status of this gitlet.
      */
     public void status() {
-        Collections.sort(staged);
-        Collections.sort(removal);
+        update();
+        Collections.sort(removal());
         Collections.sort(deleted);
         Collections.sort(modified);
         Collections.sort(untracked);
         System.out.println("=== Branches ===");
-        for (String s : branches) {
+        for (String s : Refs.branches()) {
             if (s.equals(_current)) {
                 System.out.println("*" + s);
             } else {
@@ -434,12 +480,12 @@ public class User implements Serializable {
         }
         System.out.println("");
         System.out.println("=== Staged Files ===");
-        for (File f : staged) {
-            System.out.println(f.getName());
+        for (String s : staged().keySet()) {
+            System.out.println(s);
         }
         System.out.println("");
         System.out.println("=== Removed Files ===");
-        for (String s : removal) {
+        for (String s : removal()) {
             System.out.println(s);
         }
         System.out.println("");
@@ -447,8 +493,8 @@ public class User implements Serializable {
         compareTwo(deleted, modified);
         System.out.println("");
         System.out.println("=== Untracked Files ===");
-        for (File f : untracked) {
-            System.out.println(f.getName());
+        for (String s : untracked) {
+            System.out.println(s);
         }
         System.out.println("");
     }
@@ -456,19 +502,20 @@ public class User implements Serializable {
     /**
      * Decide the ordering of printing of DELETE and MODIFY.
      */
-    private void compareTwo(ArrayList<File> delete, ArrayList<File> modify) {
+    private void compareTwo(ArrayList<String> delete,
+                            ArrayList<String> modify) {
         int d = 0;
         int m = 0;
         while (d < delete.size() || m < modify.size()) {
             if (m <= modify.size() - 1 && d >= delete.size() - 1) {
-                System.out.println(modify.get(m).getName() + " (modified)");
+                System.out.println(modify.get(m) + " (modified)");
                 m += 1;
             } else if (m >= modify.size() - 1 && d <= delete.size() - 1) {
-                System.out.println(delete.get(d).getName() + " (deleted)");
+                System.out.println(delete.get(d) + " (deleted)");
                 d += 1;
             } else {
-                String del = delete.get(d).getName();
-                String mod = modify.get(m).getName();
+                String del = delete.get(d);
+                String mod = modify.get(m);
                 if (del.compareTo(mod) > 0) {
                     System.out.println(del + " (deleted)");
                     d += 1;
@@ -481,72 +528,155 @@ public class User implements Serializable {
     }
 
     /**
-     * Compares two files A B,
+     * Prints how the tracked files differ between two versions, CODES
+     * naming zero, one or two commits.  With none the working files
+     * are compared with what the next commit would hold; with one,
+     * with that commit; with two the commits are compared with each
+     * other.  Files whose blob ids are equal are skipped unread,
+     * working files being hashed through the stat cache, and
+     * unchanged subtrees of two commits are not even listed.  Each
+     * file's two versions are read whole and its diff is written out
+     * before the next file is read; files too large for Diff are only
+     * said to differ.
+     */
+    public void diff(List<String> codes) {
+        ArrayList<Commit> commits = new ArrayList<>();
+        for (String code : codes) {
+            String target = commits().find(code);
+            if (target == null) {
+                System.out.println("No commit with that id exists.");
+                System.exit(0);
+            }
+            commits.add(Commit.load(target));
+        }
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        try {
+            if (commits.size() == 2) {
+                Tree.diff(commits.get(0).getTree(), commits.get(1).getTree(),
+                    (path, before, after) ->
+                        diffFile(path, before, after, null, out));
+            } else {
+                TreeMap<String, String> next = delSimilar(removal());
+                next.putAll(staged());
+                TreeMap<String, String> before =
+                    commits.isEmpty() ? next : commits.get(0).getTracked();
+                TreeSet<String> names = new TreeSet<>(before.keySet());
+                names.addAll(next.keySet());
+                for (String name : names) {
+                    File file = new File(name);
+                    String was = before.get(name);
+                    if (file.isFile()
+                        ? was == null || !stage().holds(file, was)
+                        : was != null) {
+                        String id = file.isFile() ? stage().hash(file) : null;
+                        diffFile(name, was, id, id == null ? null : file,
+                                 out);
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException | UncheckedIOException excp) {
+            throw Utils.error("Cannot write diff: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes to OUT the diff of file NAME from blob BEFORE to blob
+     * AFTER, either of which is null if the file is absent.  If FILE
+     * is not null, it holds the contents of AFTER and is read instead.
+     * Files over Diff.LIMIT are not read at all.
+     */
+    private static void diffFile(String name, String before, String after,
+                                 File file, OutputStream out) {
+        long size = Math.max(before == null ? 0 : Blobs.size(before),
+            file != null ? file.length()
+            : after == null ? 0 : Blobs.size(after));
+        try {
+            if (size > Diff.LIMIT) {
+                Diff.differ(name, before != null, after != null, out);
+                return;
+            }
+            Diff.unified(name, before == null ? null : Blobs.read(before),
+                file != null ? Utils.readContents(file)
+                : after == null ? null : Blobs.read(after), out);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /**
+     * Compares file A with the blob ID,
      * returns true if same content false otherwise.
+     * A is only read if the stat cache cannot vouch for it.
      */
-    private boolean compare(File a, File b) {
-        String temp1 = Utils.readContentsAsString(a);
-        return temp1.equals(Utils.readContentsAsString(b));
+    private boolean compare(File a, String id) {
+        return stage().holds(a, id);
     }
 
     /**
      * Search through dir and
      * add untracked files to untrack.
      * add modified files to modified.
+     * Does nothing if already done by this command.
      */
     public void update() {
+        if (_scanned) {
+            return;
+        }
+        _scanned = true;
         deleted.clear();
         modified.clear();
         untracked.clear();
-        ArrayList<File> prev = new ArrayList<>(head.getCommit().getTracked());
-        prev.removeIf(f -> !f.getName().contains(".txt"));
-        File[] now = new File(System.getProperty("user.dir")).listFiles();
-        if (now == null) {
-            return;
-        }
-        for (int i = 0; i < now.length; i++) {
-            if (now[i].getName().contains(".txt")) {
-                if (has(prev, now[i]) != -1) {
-                    int x = has(prev, now[i]);
-                    if (!compare(prev.get(x), now[i])) {
-                        modified.add(now[i]);
-                    }
-                } else if (!staged.contains(now[i])
-                        && !untracked.contains(now[i])) {
-                    untracked.add(now[i]);
+        TreeMap<String, String> tracked = head().getTracked();
+        TreeSet<String> prev = new TreeSet<>(tracked.keySet());
+        List<String> now = Utils.workingFiles();
+        for (String name : now) {
+            if (prev.remove(name)) {
+                if (!compare(new File(name), tracked.get(name))) {
+                    modified.add(name);
                 }
+            } else if (!staged().containsKey(name)) {
+                untracked.add(name);
             }
-            File lamb = now[i];
-            prev.removeIf(f -> f.getName().equals(lamb.getName()));
-            now[i] = null;
         }
         deleted.addAll(prev);
-        deleted.removeIf(f -> removal.contains(f.getName()));
+        deleted.removeAll(removal());
+        stage().retain(now);
 
-        for (File f : staged) {
-            deleted.removeIf(f2 -> f.getName().equals(f2.getName()));
-            modified.removeIf(f3 -> f.getName().equals(f3.getName()));
-            untracked.removeIf(f4 -> f.getName().equals(f4.getName()));
+        for (String name : staged().keySet()) {
+            deleted.remove(name);
+            modified.remove(name);
+            untracked.remove(name);
         }
     }
 
     /**
-     * Returns index if arraylist PREV contains file with name FILE.
-     * Returns -1 otherwise
+     * Exits with an error if checking out commit TO would overwrite
+     * a file that is not tracked by the head.
      */
-    private int has(ArrayList<File> prev, File file) {
-        for (File f : prev) {
-            if (f.getName().equals(file.getName())) {
-                return prev.indexOf(f);
+    private void inTheWay(Commit to) {
+        update();
+        for (String name : to.getTracked().keySet()) {
+            if (untracked.contains(name)) {
+                inTheWay();
             }
         }
-        return -1;
+    }
+
+    /**
+     * Exits with the error for an untracked file in the way.
+     */
+    private void inTheWay() {
+        System.out.println("There is an untracked file in the"
+                + " way; delete it, or add and commit it first.");
+        System.exit(0);
     }
 
     /**
      * Returns whether there is an untracked file.
      */
     public boolean warning() {
+        update();
         return untracked.size() != 0;
     }
 
@@ -556,11 +686,11 @@ public class User implements Serializable {
      * the file at the tip of the current branch.
      */
     public void merge(String branch) {
-        if (_branchHeads.get(branch) == null) {
+        if (!Refs.exists(branch)) {
             System.out.println("A branch with that name does not exist.");
             System.exit(0);
         }
-        if (removal.size() != 0 || staged.size() != 0) {
+        if (removal().size() != 0 || staged().size() != 0) {
             System.out.println("You have uncommitted changes.");
             System.exit(0);
         }
@@ -569,242 +699,182 @@ public class User implements Serializable {
             System.exit(0);
         }
 
-        DoubleHT splitPoint = getSplit(branch);
-        if (splitPoint == _branchHeads.get(branch)) {
+        String other = Refs.get(branch);
+        String splitPoint = getSplit(other);
+        if (splitPoint.equals(other)) {
             System.out.println("Given branch is "
                     + "an ancestor of the current branch.");
             System.exit(0);
-        } else if (splitPoint == _branchHeads.get(_current)) {
+        } else if (splitPoint.equals(head().getCode())) {
             System.out.println("Current branch fast-forwarded.");
-            switchBranch(branch);
-            checkAll();
-            System.exit(0);
+            Commit from = head();
+            Refs.set(_current, other);
+            head = Commit.load(other);
+            checkAll(from);
         } else {
-            Commit tip = _branchHeads.get(_current).getCommit();
-            Commit split = splitPoint.getCommit();
-            Commit given = _branchHeads.get(branch).getCommit();
-
-            File here = new File(System.getProperty("user.dir"));
-            for (File f : here.listFiles()) {
-                f.delete();
-            }
+            Commit tip = head();
+            Commit given = Commit.load(other);
 
             conflict = false;
-            classify(tip.getTracked(), split.getTracked(), given.getTracked(),
-                    tip.getCode(), split.getCode(), given.getCode());
+            classify(tip.getTracked(),
+                    Commit.load(splitPoint).getTracked(),
+                    given.getTracked());
 
+            makeCommit(String.format("Merged %s into %s.", branch, _current),
+                    List.of(tip, given));
             if (conflict) {
-                commit("Encountered a merge conflict.");
-            } else {
-                commit(String.format("Merged %s into %s.", branch, _current));
+                System.out.println("Encountered a merge conflict.");
             }
-            _branchHeads.get(_current).two(branch);
         }
     }
 
     /**
-     * Classify files in CURR SPLIT GIVEN using split's perspective.
-     * With String C, S, G.
+     * Classify files in CURR SPLIT GIVEN using split's perspective,
+     * comparing blob ids only.  Files changed only in GIVEN are
+     * checked out and staged, files changed in both differently
+     * are merged line by line.
      */
-    private void classify(ArrayList<File> curr,
-                          ArrayList<File> split, ArrayList<File> given,
-                          String c, String s, String g) {
-        ArrayList<File> trash1 = new ArrayList<>();
-        ArrayList<File> trash2 = new ArrayList<>();
-        for (File spl : split) {
-            boolean curExist = false;
-            boolean givExist = false;
-            File cacheC = null;
-            File cacheG = null;
-            for (File cur : curr) {
-                if (spl.getName().equals(cur.getName())) {
-                    curExist = true;
-                    cacheC = cur;
-                }
-            }
-            for (File giv : given) {
-                if (spl.getName().equals(giv.getName())) {
-                    givExist = true;
-                    cacheG = giv;
-                }
+    private void classify(Map<String, String> curr,
+                          Map<String, String> split,
+                          Map<String, String> given) {
+        TreeSet<String> names = new TreeSet<>(split.keySet());
+        names.addAll(curr.keySet());
+        names.addAll(given.keySet());
+        for (String name : names) {
+            String s = split.get(name);
+            String c = curr.get(name);
+            String g = given.get(name);
+            if (Objects.equals(c, g) || Objects.equals(s, g)) {
+                continue;
             }
-            if (curExist && givExist) {
-                work(cacheC, spl, cacheG, c, s, g);
-                curr.remove(cacheC);
-                given.remove(cacheG);
-            } else if (curExist) {
-                if (!compare(cacheC, spl)) {
-                    conflict(cacheC, null);
-                }
-                curr.remove(cacheC);
-            } else if (givExist) {
-                if (!compare(cacheG, spl)) {
-                    conflict(null, cacheG);
-                }
-                given.remove(cacheG);
-            }
-        }
-        for (File f1 : curr) {
-            for (File f2 : given) {
-                if (f1.getName().equals(f2.getName())) {
-                    if (compare(f1, f2)) {
-                        checkout(c, f1);
-                    } else {
-                        conflict(f1, f2);
-                    }
-                    trash1.add(f1);
-                    trash2.add(f2);
+            if (Objects.equals(s, c)) {
+                if (g == null) {
+                    removal().add(name);
+                    delete(name);
+                } else {
+                    Blobs.restore(g, new File(name));
+                    staged().put(name, g);
                 }
+            } else {
+                mergeFile(name, s, c, g);
             }
         }
-        curr.removeAll(trash1);
-        given.removeAll(trash2);
-        for (File f1 : curr) {
-            present(f1, false);
-        }
-        for (File f2 : given) {
-            present(f2, true);
-            add(f2);
-        }
     }
 
-    /** Creates file F in working directory.
-     * Stage if STAGE.*/
-    private void present(File f, boolean stage) {
-        File temp = new File(System.getProperty("user.dir")
-                + "/" + f.getName());
-        try {
-            temp.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeContents(temp, Utils.readContentsAsString(f));
-        if (stage) {
-            add(temp);
-        }
-    }
-
-
     /**
-     * Process files CACHEC, SPL, CACHEG, C, S , G.
+     * Merge versions C and G of file NAME, both changed from version
+     * S, into the working directory and stage the result.  When both
+     * exist their lines are merged, so only lines changed differently
+     * on both sides conflict; otherwise the whole file does.  Any
+     * version may be null for an absent file.
      */
-    private void work(File cacheC, File spl,
-                      File cacheG, String c, String s, String g) {
-        if (!compare(spl, cacheG) && compare(spl, cacheC)) {
-            checkout(g, cacheG);
-            add(cacheG);
-        } else if (compare(spl, cacheG) && !compare(spl, cacheC)) {
-            checkout(c, cacheC);
-        } else if (!compare(spl, cacheG) && !compare(spl, cacheC)) {
-            File temp = conflict(cacheC, cacheG);
-            add(temp);
-            conflict = true;
-            System.out.println("Encountered a merge conflict.");
-        } else {
-            checkout(c, cacheC);
-        }
-    }
-
-    /**
-     * Return Format conflicting file CACHEC and CACHEG.
-     */
-    private File conflict(File cacheC, File cacheG) {
-        File ret = new File(System.getProperty("user.dir"));
-        try {
-            ret.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        String content = "<<<<<<< HEAD\n";
-        if (cacheC == null) {
-            content += "=======";
+    private void mergeFile(String name, String s, String c, String g) {
+        File ret = new File(name);
+        if (c != null && g != null) {
+            byte[] base = s == null ? new byte[0] : Blobs.read(s);
+            if (Merge.merge(base, Blobs.read(c), Blobs.read(g), ret)) {
+                conflict = true;
+            }
         } else {
-            content += Utils.readContentsAsString(cacheC) + "=======";
+            Merge.conflict(c == null ? null : Blobs.read(c),
+                    g == null ? null : Blobs.read(g), ret);
+            conflict = true;
         }
-        if (cacheG == null) {
-            content += ">>>>>>>";
-        } else {
-            content += Utils.readContentsAsString(cacheG) + ">>>>>>>";
+        add(ret);
+    }
+
+    /**
+     * Return the id of the split point between the head and the
+     * commit with id OTHER: a common ancestor that is not an ancestor
+     * of any other common ancestor.  Commits are visited from the
+     * highest generation down, marked with the heads they are reached
+     * from, so the first one reached from both has the highest
+     * generation of all common ancestors.  Only the commit graph is
+     * read, and only between the heads and the split point.
+     */
+    private String getSplit(String other) {
+        CommitGraph graph = graph();
+        HashMap<Integer, Integer> reached = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            Comparator.comparingInt(graph::generation).reversed());
+        reach(graph.position(head().getCode()), FROM_HEAD, reached, queue);
+        reach(graph.position(other), FROM_OTHER, reached, queue);
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            int from = reached.get(c);
+            if (from == (FROM_HEAD | FROM_OTHER)) {
+                return graph.id(c);
+            }
+            for (int p : graph.parents(c)) {
+                if (p != CommitGraph.NONE) {
+                    reach(p, from, reached, queue);
+                }
+            }
         }
-        Utils.writeContents(ret, content);
-        return ret;
+        return null;
     }
 
     /**
-     * Return the doubleHT split point between current branch and BRANCH.
+     * Mark the commit at position I as reached FROM in REACHED, and
+     * add it to QUEUE if it was not reached before.
      */
-    private DoubleHT getSplit(String branch) {
-        DoubleHT split = _branchHeads.get(_current);
-        while (split != null && !split.bran(branch)) {
-            split = split.getParent();
+    private static void reach(int i, int from,
+                              HashMap<Integer, Integer> reached,
+                              PriorityQueue<Integer> queue) {
+        if (reached.containsKey(i)) {
+            reached.merge(i, from, (a, b) -> a | b);
+        } else {
+            reached.put(i, from);
+            queue.add(i);
         }
-        return split;
     }
 
     /** Check to see if exist conflict. */
     private boolean conflict;
 
     /**
-     * An arraylist that stores all the staged files.
+     * The staging area, or null until first used.
      */
-    private ArrayList<File> staged;
+    private Stage _stage;
 
     /**
-     * Where the HEAD is on.
+     * The head commit, or null until first used.
      */
-    private DoubleHT head;
+    private Commit head;
 
     /**
-     * Stores name : position of branch head.
+     * Stores the current branch the user is on.
      */
-    private HashMap<String, DoubleHT> _branchHeads;
+    private String _current;
 
     /**
-     * Stores the current branch the user is on.
+     * Indexes all commit since the first by id and message,
+     * or null until first used.
      */
-    private String _current;
+    private CommitIndex _commits;
 
     /**
-     * Stores all commit since the first.
+     * The commit graph, or null until first used.
      */
-    private ArrayList<Commit> total;
+    private CommitGraph _graph;
 
     /**
-     * Hashmap that has code as key, and real file name as value.
+     * True iff untracked, modified and deleted are up to date.
      */
-    private HashMap<String, String> real;
+    private boolean _scanned;
 
     /**
      * Arraylist that keeps track of untracked files.
      */
-    private ArrayList<File> untracked;
+    private ArrayList<String> untracked = new ArrayList<>();
 
     /**
      * Arraylist that keeps track of modified files.
      */
-    private ArrayList<File> modified;
+    private ArrayList<String> modified = new ArrayList<>();
 
     /**
      * Arraylist that keeps track of deleted files.
      */
-    private ArrayList<File> deleted;
-
-    /**
-     * Arraylist that keeps track of REMOVAl files.
-     */
-    private ArrayList<String> removal;
-
-    /**
-     * Arraylist that keeps track of branch names.
-     */
-    private ArrayList<String> branches;
-
-    /** Stores value d. */
-    private boolean dp;
-
-    /** Return desired boolean. */
-    public boolean getD() {
-        dp = !dp;
-        return !dp;
-    }
+    private ArrayList<String> deleted = new ArrayList<>();
 }
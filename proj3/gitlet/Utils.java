@@ -9,13 +9,21 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -29,30 +37,150 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Files at least this long are hashed through a memory map;
+     *  shorter ones are read into a direct buffer. */
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    /** Bytes mapped at a time when hashing a large file. */
+    static final long MAP_CHUNK = 1 << 26;
+
+    /** Size of the direct buffer used to hash small files. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        return hex(sha1Bytes(vals));
+    }
+
+    /** Returns the 20-byte SHA-1 hash of the concatenation of VALS, as
+     *  sha1 does, without making a hexadecimal numeral of it. */
+    static byte[] sha1Bytes(Object... vals) {
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                Trace.hashed(((byte[]) val).length);
+            } else if (val instanceof String) {
+                byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                md.update(bytes);
+                Trace.hashed(bytes.length);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return md.digest();
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE. */
+    static String sha1(Path file) {
+        return hex(sha1Bytes(file));
+    }
+
+    /** Returns the 20-byte SHA-1 hash of the contents of FILE.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static byte[] sha1Bytes(Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            return sha1Bytes(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the 20-byte SHA-1 hash of everything in IN from its
+     *  current position on.  Large files are hashed MAP_CHUNK bytes at
+     *  a time through a memory map, small ones through a reused
+     *  direct buffer, so the contents are never copied into the heap. */
+    static byte[] sha1Bytes(FileChannel in) throws IOException {
+        MessageDigest md = digest();
+        long start = in.position();
+        long size = in.size();
+        if (size - start >= MAP_THRESHOLD) {
+            for (long at = start; at < size; at += MAP_CHUNK) {
+                md.update(in.map(FileChannel.MapMode.READ_ONLY, at,
+                                 Math.min(MAP_CHUNK, size - at)));
+            }
+            in.position(size);
+        } else {
+            ByteBuffer buf = BUFFER.get();
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
+        }
+        Trace.hashed(size - start);
+        return md.digest();
+    }
+
+    /** Returns this thread's SHA-1 MessageDigest, reset.  It is
+     *  reused by every hash this thread makes, so it must not be
+     *  held across another call that hashes. */
+    static MessageDigest digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a new SHA-1 MessageDigest, for hashing data as it
+     *  streams by (e.g. through a java.security.DigestInputStream). */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Each thread's SHA-1 MessageDigest. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(Utils::sha1Digest);
+
+    /** Each thread's direct buffer for hashing small files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns DIGEST as a hexadecimal numeral. */
+    static String hex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns true iff DIGEST is the hash whose hexadecimal numeral
+     *  is HEX, compared without making either into the other. */
+    static boolean sameHash(byte[] digest, String hex) {
+        if (hex.length() != 2 * digest.length) {
+            return false;
+        }
+        for (int i = 0; i < digest.length; i += 1) {
+            if (hex.charAt(2 * i) != HEX_DIGITS[(digest[i] >> 4) & 0xf]
+                || hex.charAt(2 * i + 1) != HEX_DIGITS[digest[i] & 0xf]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX,
+     *  the inverse of hex. */
+    static byte[] unhex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -93,6 +221,7 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        Trace.read();
         try {
             return Files.readAllBytes(file.toPath());
         } catch (IOException excp) {
@@ -117,6 +246,7 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            Trace.written();
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
@@ -132,10 +262,53 @@ class Utils {
         }
     }
 
+    /** Suffix of the temporary files writeAtomically writes. */
+    static final String TEMP = ".tmp";
+
+    /** Return the directory for temporary files destined for FILE: tmp
+     *  in the gitlet directory holding FILE, so that they are on the
+     *  same file system and never in a directory that is listed, or
+     *  else the directory of FILE. */
+    static File tempDir(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        for (File d = dir; d != null; d = d.getParentFile()) {
+            if (d.getName().equals(User.DIRECTORY.getName())) {
+                File tmp = join(d, "tmp");
+                tmp.mkdir();
+                return tmp;
+            }
+        }
+        return dir;
+    }
+
+    /** Write the concatenation of CONTENTS to FILE as writeContents does,
+     *  but into a temporary file that is then renamed over FILE, so that
+     *  a concurrent reader sees either the old contents or the new,
+     *  never a mixture. */
+    static void writeAtomically(File file, Object... contents) {
+        File temp = null;
+        try {
+            temp = Files.createTempFile(tempDir(file).toPath(),
+                                        file.getName(), TEMP).toFile();
+            writeContents(temp, contents);
+            Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        Trace.read();
+        Trace.decoded();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
@@ -184,6 +357,47 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Return the path of FILE relative to the working directory, with
+     *  '/' between directories, as gitlet names files. */
+    static String path(File file) {
+        Path rel = Paths.get("").toAbsolutePath()
+            .relativize(file.toPath().toAbsolutePath().normalize());
+        return rel.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Return the paths of all plain files in the working directory and
+     *  its subdirectories, in lexicographic order.  .gitlet is not
+     *  entered. */
+    static List<String> workingFiles() {
+        ArrayList<String> paths = new ArrayList<>();
+        try {
+            Files.walkFileTree(Paths.get("").toAbsolutePath(),
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir,
+                            BasicFileAttributes attrs) {
+                        return dir.endsWith(".gitlet")
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            paths.add(path(file.toFile()));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        } catch (IOException excp) {
+            throw error("Cannot list working directory: %s",
+                    excp.getMessage());
+        }
+        paths.sort(null);
+        return paths;
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,